@@ -0,0 +1,53 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Context;
+
+/**
+ * Das Aufloesen der App-Verzeichnisse per {@link Device#getFilesDirLow(Context, String)},
+ * verglichen mit dem Weg ohne Cache (String bauen, File anlegen, isDirectory).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilesDirBenchmark {
+	private Context mContext;
+	private Device mDevice;
+	
+	@Setup
+	public void setup() throws IOException {
+		File root = Fixtures.install();
+		mContext = Fixtures.context(root);
+		mDevice = Environment2.getSnapshot().getDevices().get(0);
+		mDevice.getFilesDir(mContext, "bench");
+	}
+	
+	@Benchmark
+	public File getFilesDirLow() {
+		return mDevice.getFilesDirLow(mContext, "bench");
+	}
+	
+	@Benchmark
+	public File uncached() {
+		File f = new File(mDevice.getMountPoint() + Environment2.PATH_PREFIX + mContext.getPackageName() + "/bench");
+		if (!f.isDirectory() && mDevice.isWriteable()) f.mkdirs();
+		return f;
+	}
+}
@@ -0,0 +1,105 @@
+package me.systembug.device;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+
+import android.content.Context;
+
+/**
+ * Baut fuer die Benchmarks ein kleines "Geraet" in einem temporaeren Verzeichnis 
+ * auf: /system/etc/vold.fstab, /data, /mnt/sdcard und die in vold.fstab 
+ * eingetragenen Karten. Die android-Ersatzklassen in src/shims lesen die Pfade 
+ * aus System-Properties; deshalb muss {@link #install()} vor dem ersten Zugriff
+ * auf {@link Environment2} aufgerufen werden.
+ */
+final class Fixtures {
+	static final String PACKAGE = "me.systembug.benchmark";
+	private static File sRoot;
+	
+	private Fixtures() { }
+	
+	
+	static synchronized File install() throws IOException {
+		if (sRoot!=null) return sRoot;
+		File root = createTempDir("e2bench");
+		File etc = mkdirs(new File(root, "system/etc"));
+		mkdirs(new File(root, "data"));
+		mkdirs(new File(root, "mnt/sdcard"));
+		
+		String vold = resource("vold.fstab").replace("@ROOT@", root.getPath());
+		write(new File(etc, "vold.fstab"), vold);
+		for (String line : vold.split("\n")) {
+			String[] f = line.trim().split(" ");
+			if (f.length>2 && "dev_mount".equals(f[0])) mkdirs(new File(f[2]));
+		}
+		
+		System.setProperty("android.root", new File(root, "system").getPath());
+		System.setProperty("android.data", new File(root, "data").getPath());
+		System.setProperty("android.external", new File(root, "mnt/sdcard").getPath());
+		System.setProperty(Environment2.PROPERTY_LAZY_SCAN, "true");
+		sRoot = root;
+		return root;
+	}
+	
+	
+	static String resource(String name) throws IOException {
+		BufferedReader r = new BufferedReader(new InputStreamReader(
+				Fixtures.class.getResourceAsStream("/fixtures/"+name), "UTF-8"));
+		try {
+			StringBuilder sb = new StringBuilder();
+			String s;
+			while ((s = r.readLine())!=null) sb.append(s).append('\n');
+			return sb.toString();
+		} finally {
+			r.close();
+		}
+	}
+	
+	
+	static File createTempDir(String prefix) throws IOException {
+		File f = File.createTempFile(prefix, "");
+		if (!f.delete() || !f.mkdir()) throw new IOException("kann "+f+" nicht anlegen");
+		return f;
+	}
+	
+	
+	static void write(File f, String content) throws IOException {
+		Writer w = new FileWriter(f);
+		try {
+			w.write(content);
+		} finally {
+			w.close();
+		}
+	}
+	
+	
+	private static File mkdirs(File f) throws IOException {
+		if (!f.isDirectory() && !f.mkdirs()) throw new IOException("kann "+f+" nicht anlegen");
+		return f;
+	}
+	
+	
+	/** Context mit festem Paketnamen und Verzeichnissen unterhalb des Fixture-Roots */
+	static Context context(final File root) {
+		return new Context() {
+			@Override public String getPackageName() { return PACKAGE; }
+			@Override public File getFilesDir() { return new File(root, "data/data/"+PACKAGE+"/files"); }
+			@Override public File getCacheDir() { return new File(root, "data/data/"+PACKAGE+"/cache"); }
+			@Override public File getExternalFilesDir(String type) { 
+				File f = new File(root, "mnt/sdcard/Android/data/"+PACKAGE+"/files"+(type==null ? "" : "/"+type));
+				f.mkdirs();
+				return f;
+			}
+			@Override public File getExternalCacheDir() { 
+				File f = new File(root, "mnt/sdcard/Android/data/"+PACKAGE+"/cache");
+				f.mkdirs();
+				return f;
+			}
+			@Override public Context getApplicationContext() { return this; }
+		};
+	}
+}
@@ -0,0 +1,68 @@
+package me.systembug.device;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Pfad-zu-Device: der Praefix-Baum {@link MountPointIndex} gegen die lineare
+ * Suche mit startsWith, wie sie DevicesListPreference frueher gemacht hat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LookupBenchmark {
+	private static final String[] MOUNT_POINTS = {
+		"/data", "/mnt/sdcard", "/mnt/sdcard/external_sd", "/mnt/extSdCard", "/mnt/UsbDriveA",
+		"/mnt/UsbDriveB", "/mnt/UsbDriveC", "/storage/emulated/0", "/storage/1A2B-3C4D", "/storage/5E6F-7A8B"
+	};
+	private static final String[] PATHS = {
+		"/mnt/sdcard/Android/data/me.systembug.benchmark/files/images/0001.jpg",
+		"/mnt/sdcard/external_sd/DCIM/Camera/IMG_20120101_120000.jpg",
+		"/storage/1A2B-3C4D/Android/data/me.systembug.benchmark/cache/tiles/12/2048/1365.png",
+		"/data/data/me.systembug.benchmark/files/db/main.sqlite",
+		"/mnt/UsbDriveC/backup/2012/10/03/archive.zip",
+		"/proc/self/mountinfo"
+	};
+	
+	private MountPointIndex<String> mIndex;
+	
+	@Setup
+	public void setup() {
+		mIndex = new MountPointIndex<String>();
+		for (String s : MOUNT_POINTS) mIndex.put(s, s);
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(6)
+	public void index(Blackhole bh) {
+		for (String p : PATHS) bh.consume(mIndex.lookup(p));
+	}
+	
+	@Benchmark
+	@OperationsPerInvocation(6)
+	public void linear(Blackhole bh) {
+		for (String p : PATHS) {
+			String best = null;
+			for (String m : MOUNT_POINTS) {
+				if (p.startsWith(m) && (p.length()==m.length() || p.charAt(m.length())=='/') 
+						&& (best==null || m.length()>best.length())) best = m;
+			}
+			bh.consume(best);
+		}
+	}
+}
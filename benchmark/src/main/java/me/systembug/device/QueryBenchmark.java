@@ -0,0 +1,67 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Die Filterung in {@link Environment2#getDevices(String, boolean, boolean, boolean)}
+ * und die geteilte Liste aus {@link Environment2#getDeviceList(String, boolean, boolean, boolean)},
+ * dazu die vorab bestimmte Route der getCard*-Methoden.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+	
+	@Setup
+	public void setup() throws IOException {
+		Fixtures.install();
+		Environment2.rescanDevices();
+	}
+	
+	@Benchmark
+	public Device[] getDevicesAll() {
+		return Environment2.getDevices(null, true, true, false);
+	}
+	
+	@Benchmark
+	public Device[] getDevicesKey() {
+		return Environment2.getDevices("usb", false, true, true);
+	}
+	
+	@Benchmark
+	public List<Device> getDeviceListAll() {
+		return Environment2.getDeviceList(null, true, true, false);
+	}
+	
+	@Benchmark
+	public List<Device> getDeviceListKey() {
+		return Environment2.getDeviceList("usb", false, true, true);
+	}
+	
+	@Benchmark
+	public File getCardDirectory() {
+		return Environment2.getCardDirectory();
+	}
+	
+	@Benchmark
+	public File getCardPublicDirectory() {
+		return Environment2.getCardPublicDirectory("DCIM");
+	}
+}
@@ -0,0 +1,85 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Das Auswerten der Mount-Quellen: vold.fstab per {@link VoldScanner}, 
+ * mountinfo per {@link MountInfoScanner} (nur Parsen bzw. mit Lesen der Datei)
+ * und ein kompletter {@link Environment2#rescanDevices()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBenchmark {
+	
+	/** zaehlt nur, damit die Devices selbst nicht mitgemessen werden */
+	static final class CountingSink implements DeviceScanner.Sink {
+		final String primary;
+		boolean removable = true;
+		int count;
+		CountingSink(String primary) { this.primary = primary; }
+		@Override public String getPrimaryMountPoint() { return primary; }
+		@Override public boolean isPrimaryRemovable() { return removable; }
+		@Override public void setPrimaryRemovable(boolean r) { removable = r; }
+		@Override public void addDevice(String label, String mountPoint) { count++; }
+	}
+	
+	private VoldScanner mVold;
+	private MountInfoScanner mMountInfo;
+	private MountInfoScanner mMountInfoFile;
+	private char[] mMountInfoChars;
+	private String mPrimary;
+	
+	@Setup
+	public void setup() throws IOException {
+		File root = Fixtures.install();
+		mPrimary = new File(root, "mnt/sdcard").getPath();
+		mVold = new VoldScanner("vold.fstab");
+		mMountInfo = new MountInfoScanner();
+		mMountInfoChars = Fixtures.resource("mountinfo").toCharArray();
+		File f = new File(root, "mountinfo");
+		Fixtures.write(f, Fixtures.resource("mountinfo"));
+		mMountInfoFile = new MountInfoScanner(f, MountInfoScanner.DEFAULT_TYPES);
+	}
+	
+	@Benchmark
+	public int vold() {
+		CountingSink sink = new CountingSink(mPrimary);
+		mVold.scan(sink);
+		return sink.count;
+	}
+	
+	@Benchmark
+	public int mountInfoParse() {
+		return mMountInfo.parse(mMountInfoChars, mMountInfoChars.length, new CountingSink("/storage/emulated/0"));
+	}
+	
+	@Benchmark
+	public int mountInfoFile() {
+		CountingSink sink = new CountingSink("/storage/emulated/0");
+		mMountInfoFile.scan(sink);
+		return sink.count;
+	}
+	
+	@Benchmark
+	public DeviceSnapshot rescan() {
+		Environment2.rescanDevices();
+		return Environment2.getSnapshot();
+	}
+}
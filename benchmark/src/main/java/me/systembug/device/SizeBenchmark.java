@@ -0,0 +1,63 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Groessenabfragen: direkt per statfs ({@link Size#getSpace(File)} bzw. mit einem
+ * wiederverwendeten {@link StorageStats}), ueber den {@link SpaceCache} und ueber
+ * {@link Device#getSize()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SizeBenchmark {
+	private File mDir;
+	private String mPath;
+	private Device mDevice;
+	private final StorageStats mStats = new StorageStats();
+	
+	@Setup
+	public void setup() throws IOException {
+		Fixtures.install();
+		mDevice = Environment2.getPrimaryExternalStorage();
+		mPath = mDevice.getMountPoint();
+		mDir = new File(mPath);
+	}
+	
+	@Benchmark
+	public Size getSpace() {
+		return Size.getSpace(mDir);
+	}
+	
+	@Benchmark
+	public StorageStats statsSample() {
+		mStats.sample(mPath);
+		return mStats;
+	}
+	
+	@Benchmark
+	public Size spaceCache() {
+		return SpaceCache.get(mPath);
+	}
+	
+	@Benchmark
+	public Size deviceGetSize() {
+		return mDevice.getSize();
+	}
+}
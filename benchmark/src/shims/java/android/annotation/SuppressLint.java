@@ -0,0 +1,6 @@
+package android.annotation;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public @interface SuppressLint {
+	String[] value();
+}
@@ -0,0 +1,6 @@
+package android.content;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public abstract class BroadcastReceiver {
+	public abstract void onReceive(Context context, Intent intent);
+}
@@ -0,0 +1,22 @@
+package android.content;
+
+import java.io.File;
+
+/** 
+ * JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md. Enthaelt nur
+ * die Methoden, die die Library benutzt.
+ */
+public abstract class Context {
+	public abstract String getPackageName();
+	public abstract File getFilesDir();
+	public abstract File getCacheDir();
+	public abstract File getExternalFilesDir(String type);
+	public abstract File getExternalCacheDir();
+	public abstract Context getApplicationContext();
+	
+	public Intent registerReceiver(BroadcastReceiver receiver, IntentFilter filter) { return null; }
+	public void unregisterReceiver(BroadcastReceiver receiver) { }
+	public SharedPreferences getSharedPreferences(String name, int mode) { 
+		throw new UnsupportedOperationException("shim"); 
+	}
+}
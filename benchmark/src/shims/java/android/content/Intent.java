@@ -0,0 +1,24 @@
+package android.content;
+
+import android.net.Uri;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class Intent {
+	public static final String ACTION_MEDIA_BAD_REMOVAL = "android.intent.action.MEDIA_BAD_REMOVAL";
+	public static final String ACTION_MEDIA_MOUNTED = "android.intent.action.MEDIA_MOUNTED";
+	public static final String ACTION_MEDIA_REMOVED = "android.intent.action.MEDIA_REMOVED";
+	public static final String ACTION_MEDIA_SHARED = "android.intent.action.MEDIA_SHARED";
+	public static final String ACTION_MEDIA_UNMOUNTED = "android.intent.action.MEDIA_UNMOUNTED";
+	public static final String ACTION_MEDIA_EJECT = "android.intent.action.MEDIA_EJECT";
+	
+	private final String mAction;
+	private final Uri mData;
+	
+	public Intent(String action, Uri data) {
+		mAction = action;
+		mData = data;
+	}
+	
+	public String getAction() { return mAction; }
+	public Uri getData() { return mData; }
+}
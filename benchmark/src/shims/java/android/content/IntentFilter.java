@@ -0,0 +1,7 @@
+package android.content;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class IntentFilter {
+	public void addAction(String action) { }
+	public void addDataScheme(String scheme) { }
+}
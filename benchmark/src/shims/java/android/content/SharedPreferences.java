@@ -0,0 +1,6 @@
+package android.content;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public interface SharedPreferences {
+	String getString(String key, String defValue);
+}
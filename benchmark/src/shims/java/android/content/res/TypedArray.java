@@ -0,0 +1,6 @@
+package android.content.res;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class TypedArray {
+	public String getString(int index) { return null; }
+}
@@ -0,0 +1,13 @@
+package android.net;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class Uri {
+	private final String mPath;
+	
+	public Uri(String path) { mPath = path; }
+	
+	public String getPath() { return mPath; }
+	
+	@Override
+	public String toString() { return "file://"+mPath; }
+}
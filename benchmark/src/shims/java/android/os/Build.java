@@ -0,0 +1,20 @@
+package android.os;
+
+/** 
+ * JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md. Der API-Level
+ * kommt aus der System-Property android.sdk (Default 19).
+ */
+public class Build {
+	public static class VERSION {
+		public static final int SDK_INT = Integer.getInteger("android.sdk", 19);
+	}
+	
+	public static class VERSION_CODES {
+		public static final int FROYO = 8;
+		public static final int GINGERBREAD = 9;
+		public static final int HONEYCOMB = 11;
+		public static final int JELLY_BEAN_MR2 = 18;
+		public static final int KITKAT = 19;
+		public static final int LOLLIPOP = 21;
+	}
+}
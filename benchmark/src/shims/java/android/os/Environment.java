@@ -0,0 +1,31 @@
+package android.os;
+
+import java.io.File;
+
+/** 
+ * JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md. Die Verzeichnisse
+ * kommen aus den System-Properties android.root, android.data und android.external,
+ * damit die Benchmarks sie auf Fixtures umbiegen koennen.
+ */
+public class Environment {
+	public static final String MEDIA_MOUNTED = "mounted";
+	public static final String MEDIA_MOUNTED_READ_ONLY = "mounted_ro";
+	public static final String MEDIA_REMOVED = "removed";
+	public static final String MEDIA_UNMOUNTED = "unmounted";
+	public static final String DIRECTORY_DOWNLOADS = "Download";
+	
+	private static File dir(String property) {
+		return new File(System.getProperty(property, System.getProperty("java.io.tmpdir")));
+	}
+	
+	public static File getRootDirectory() { return dir("android.root"); }
+	public static File getDataDirectory() { return dir("android.data"); }
+	public static File getExternalStorageDirectory() { return dir("android.external"); }
+	public static String getExternalStorageState() { return MEDIA_MOUNTED; }
+	public static boolean isExternalStorageEmulated() { return false; }
+	public static boolean isExternalStorageRemovable() { return true; }
+	
+	public static File getExternalStoragePublicDirectory(String type) {
+		return new File(getExternalStorageDirectory(), type);
+	}
+}
@@ -0,0 +1,74 @@
+package android.os;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/** 
+ * JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md. Bildet CREATE, DELETE
+ * und MODIFY ueber einen {@link WatchService} nach; MOVED_FROM/MOVED_TO meldet
+ * der WatchService als DELETE bzw. CREATE.
+ */
+public abstract class FileObserver {
+	public static final int ACCESS = 1, MODIFY = 2, ATTRIB = 4, CLOSE_WRITE = 8, CLOSE_NOWRITE = 16,
+			OPEN = 32, MOVED_FROM = 64, MOVED_TO = 128, CREATE = 256, DELETE = 512,
+			DELETE_SELF = 1024, MOVE_SELF = 2048, ALL_EVENTS = 4095;
+	
+	private final String mPath;
+	private final int mMask;
+	private Thread mThread;
+	private WatchService mService;
+	
+	public FileObserver(String path) { this(path, ALL_EVENTS); }
+	
+	public FileObserver(String path, int mask) {
+		mPath = path;
+		mMask = mask;
+	}
+	
+	public abstract void onEvent(int event, String path);
+	
+	public synchronized void startWatching() {
+		if (mThread!=null) return;
+		try {
+			final WatchService ws = FileSystems.getDefault().newWatchService();
+			Paths.get(mPath).register(ws, StandardWatchEventKinds.ENTRY_CREATE, 
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			mService = ws;
+			mThread = new Thread("FileObserver-"+mPath) {
+				@Override public void run() {
+					try {
+						while (true) {
+							WatchKey key = ws.take();
+							for (WatchEvent<?> e : key.pollEvents()) {
+								int event = e.kind()==StandardWatchEventKinds.ENTRY_CREATE ? CREATE
+										: e.kind()==StandardWatchEventKinds.ENTRY_DELETE ? DELETE
+										: e.kind()==StandardWatchEventKinds.ENTRY_MODIFY ? MODIFY : 0;
+								if ((event & mMask)!=0) onEvent(event, ((Path) e.context()).toString());
+							}
+							if (!key.reset()) break;
+						}
+					} catch (Exception e) {
+						// beendet per stopWatching()
+					}
+				}
+			};
+			mThread.setDaemon(true);
+			mThread.start();
+		} catch (IOException e) {
+			mThread = null;
+		}
+	}
+	
+	public synchronized void stopWatching() {
+		if (mThread==null) return;
+		try { mService.close(); } catch (IOException e) { }
+		mThread = null;
+		mService = null;
+	}
+}
@@ -0,0 +1,54 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md. Alle Handler teilen
+ * sich einen Thread; removeCallbacks entfernt wie bei Android nur die noch nicht
+ * gestarteten Aufrufe dieses Handlers.
+ */
+public class Handler {
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+
+	private static final class Posted {
+		final Runnable r;
+		final ScheduledFuture<?> future;
+		Posted(Runnable r, ScheduledFuture<?> future) {
+			this.r = r;
+			this.future = future;
+		}
+	}
+
+	private final List<Posted> mPosted = new ArrayList<Posted>();
+
+	public Handler(Looper looper) { }
+
+	public boolean post(Runnable r) { return postDelayed(r, 0); }
+
+	public boolean postDelayed(Runnable r, long delayMillis) {
+		synchronized (mPosted) {
+			for (Iterator<Posted> it = mPosted.iterator(); it.hasNext(); ) {
+				if (it.next().future.isDone()) it.remove();
+			}
+			mPosted.add(new Posted(r, EXECUTOR.schedule(r, delayMillis, TimeUnit.MILLISECONDS)));
+		}
+		return true;
+	}
+
+	public void removeCallbacks(Runnable r) {
+		synchronized (mPosted) {
+			for (Iterator<Posted> it = mPosted.iterator(); it.hasNext(); ) {
+				Posted p = it.next();
+				if (p.r!=r) continue;
+				p.future.cancel(false);
+				it.remove();
+			}
+		}
+	}
+}
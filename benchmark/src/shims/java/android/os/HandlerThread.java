@@ -0,0 +1,12 @@
+package android.os;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class HandlerThread extends Thread {
+	public HandlerThread(String name, int priority) { super(name); }
+	
+	@Override
+	public void run() { }
+	
+	public Looper getLooper() { return Looper.getMainLooper(); }
+	public boolean quit() { return true; }
+}
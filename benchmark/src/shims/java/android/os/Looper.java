@@ -0,0 +1,8 @@
+package android.os;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class Looper {
+	private static final Looper MAIN = new Looper();
+	
+	public static Looper getMainLooper() { return MAIN; }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+import java.io.File;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md; rechnet mit 4-KB-Bloecken */
+public class StatFs {
+	private static final int BLOCK = 4096;
+	private File mFile;
+	
+	public StatFs(String path) { restat(path); }
+	
+	public void restat(String path) { mFile = new File(path); }
+	
+	public int getBlockSize() { return BLOCK; }
+	public int getBlockCount() { return (int) (mFile.getTotalSpace() / BLOCK); }
+	public int getAvailableBlocks() { return (int) (mFile.getUsableSpace() / BLOCK); }
+	public int getFreeBlocks() { return (int) (mFile.getFreeSpace() / BLOCK); }
+	public long getBlockSizeLong() { return BLOCK; }
+	public long getBlockCountLong() { return mFile.getTotalSpace() / BLOCK; }
+	public long getAvailableBlocksLong() { return mFile.getUsableSpace() / BLOCK; }
+	public long getFreeBlocksLong() { return mFile.getFreeSpace() / BLOCK; }
+}
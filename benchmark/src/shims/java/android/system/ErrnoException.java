@@ -0,0 +1,11 @@
+package android.system;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public final class ErrnoException extends Exception {
+	public final int errno;
+	
+	public ErrnoException(String functionName, int errno) {
+		super(functionName+" failed: "+errno);
+		this.errno = errno;
+	}
+}
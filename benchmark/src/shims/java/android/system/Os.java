@@ -0,0 +1,20 @@
+package android.system;
+
+import java.io.File;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md; nur statvfs, ohne Inodes */
+public final class Os {
+	private static final long BLOCK = 4096;
+	
+	public static StructStatVfs statvfs(String path) throws ErrnoException {
+		File f = new File(path);
+		if (!f.exists()) throw new ErrnoException("statvfs", 2);
+		StructStatVfs st = new StructStatVfs();
+		st.f_bsize = BLOCK;
+		st.f_frsize = BLOCK;
+		st.f_blocks = f.getTotalSpace() / BLOCK;
+		st.f_bfree = f.getFreeSpace() / BLOCK;
+		st.f_bavail = f.getUsableSpace() / BLOCK;
+		return st;
+	}
+}
@@ -0,0 +1,6 @@
+package android.system;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public final class StructStatVfs {
+	public long f_bsize, f_frsize, f_blocks, f_bfree, f_bavail, f_files, f_ffree, f_favail, f_fsid, f_flag, f_namemax;
+}
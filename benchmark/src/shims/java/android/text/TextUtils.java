@@ -0,0 +1,41 @@
+package android.text;
+
+import java.util.Iterator;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class TextUtils {
+	
+	public static boolean equals(CharSequence a, CharSequence b) {
+		return a==b || (a!=null && b!=null && a.toString().equals(b.toString()));
+	}
+	
+	public static boolean isEmpty(CharSequence s) { return s==null || s.length()==0; }
+	
+	
+	public static class SimpleStringSplitter implements Iterator<String>, Iterable<String> {
+		private final char mDelimiter;
+		private String mString;
+		private int mPosition, mLength;
+		
+		public SimpleStringSplitter(char delimiter) { mDelimiter = delimiter; }
+		
+		public void setString(String string) {
+			mString = string;
+			mPosition = 0;
+			mLength = string.length();
+		}
+		
+		@Override public Iterator<String> iterator() { return this; }
+		@Override public boolean hasNext() { return mPosition<mLength; }
+		
+		@Override public String next() {
+			int end = mString.indexOf(mDelimiter, mPosition);
+			if (end==-1) end = mLength;
+			String s = mString.substring(mPosition, end);
+			mPosition = end+1;
+			return s;
+		}
+		
+		@Override public void remove() { throw new UnsupportedOperationException(); }
+	}
+}
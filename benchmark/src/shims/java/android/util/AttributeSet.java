@@ -0,0 +1,7 @@
+package android.util;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public interface AttributeSet {
+	String getAttributeValue(String namespace, String name);
+	boolean getAttributeBooleanValue(String namespace, String name, boolean defaultValue);
+}
@@ -0,0 +1,15 @@
+package android.util;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md; verwirft alle Meldungen */
+public final class Log {
+	public static final int VERBOSE = 2, DEBUG = 3, INFO = 4, WARN = 5, ERROR = 6;
+	
+	public static boolean isLoggable(String tag, int level) { return false; }
+	public static int v(String tag, String msg) { return 0; }
+	public static int d(String tag, String msg) { return 0; }
+	public static int i(String tag, String msg) { return 0; }
+	public static int w(String tag, String msg) { return 0; }
+	public static int w(String tag, String msg, Throwable tr) { return 0; }
+	public static int e(String tag, String msg) { return 0; }
+	public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
@@ -0,0 +1,25 @@
+package android.util;
+
+/** JVM-Ersatz fuer die Benchmarks, siehe benchmark/README.md */
+public class Pair<F, S> {
+	public final F first;
+	public final S second;
+	
+	public Pair(F first, S second) {
+		this.first = first;
+		this.second = second;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Pair)) return false;
+		Pair<?, ?> p = (Pair<?, ?>) o;
+		return (first==null ? p.first==null : first.equals(p.first)) 
+				&& (second==null ? p.second==null : second.equals(p.second));
+	}
+	
+	@Override
+	public int hashCode() {
+		return (first==null ? 0 : first.hashCode()) ^ (second==null ? 0 : second.hashCode());
+	}
+}
@@ -0,0 +1,158 @@
+package me.systembug.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Prueft {@link MountInfoScanner} gegen die Fixture-Datei aus
+ * src/main/resources/fixtures/mountinfo und ein paar Zeilen im Format von
+ * /proc/mounts.
+ */
+public class MountInfoScannerTest {
+	private static final String PRIMARY = "/storage/emulated/0";
+
+	/** merkt sich Label und MountPoint jedes gemeldeten Devices */
+	static final class RecordingSink implements DeviceScanner.Sink {
+		final String primary;
+		final List<String> labels = new ArrayList<String>();
+		final List<String> mountPoints = new ArrayList<String>();
+		RecordingSink(String primary) { this.primary = primary; }
+		@Override public String getPrimaryMountPoint() { return primary; }
+		@Override public boolean isPrimaryRemovable() { return true; }
+		@Override public void setPrimaryRemovable(boolean r) { }
+		@Override public void addDevice(String label, String mountPoint) {
+			labels.add(label);
+			mountPoints.add(mountPoint);
+		}
+	}
+
+
+	@After
+	public void tearDown() {
+		Environment2.setScanners((DeviceScanner[]) null);
+	}
+
+
+	@Test
+	public void fixtureMountInfo() throws IOException {
+		RecordingSink sink = scan(Fixtures.resource("mountinfo"), MountInfoScanner.DEFAULT_TYPES);
+		// /firmware (vfat, Modem-Image), /mnt/runtime, /mnt/media_rw und /storage/emulated 
+		// (enthaelt den primaeren Speicher) fallen weg
+		assertEquals(list("/storage/1A2B-3C4D", "/storage/5E6F-7A8B"), sink.mountPoints);
+		// bei mountinfo ist das Label die Quelle hinter dem Dateisystem-Typ
+		assertEquals(list("/mnt/media_rw/1A2B-3C4D", "/dev/fuse"), sink.labels);
+	}
+
+
+	@Test
+	public void typeFilter() throws IOException {
+		String mountinfo = Fixtures.resource("mountinfo");
+		assertEquals(list("/storage/5E6F-7A8B"), scan(mountinfo, "fuse").mountPoints);
+		// /mnt/media_rw ist nur die interne Sicht auf die Karte
+		assertEquals(list(), scan(mountinfo, "exfat").mountPoints);
+		// /system, /data und die Hersteller-Partitionen sind nie Kandidaten
+		assertEquals(list("/cache"), scan(mountinfo, "ext4").mountPoints);
+		assertEquals(list(), scan(mountinfo, "vfat").mountPoints);
+	}
+
+
+	@Test
+	public void mountsFormat() {
+		String mounts = "rootfs / rootfs ro,seclabel 0 0\n"
+				+ "/dev/block/dm-0 /data f2fs rw,nosuid,nodev 0 0\n"
+				+ "/dev/block/vold/179:65 /mnt/extSdCard vfat rw,dirsync,uid=1000 0 0\n"
+				+ "/dev/fuse /storage/emulated fuse rw,nosuid 0 0\n"
+				+ "/dev/block/vold/8:1 /mnt/media_rw/usb exfat rw 0 0\n"
+				+ "/dev/block/sda1 /mnt/UsbDriveA vfat rw 0 0\n";
+		RecordingSink sink = scan(mounts, MountInfoScanner.DEFAULT_TYPES);
+		assertEquals(list("/mnt/extSdCard", "/mnt/UsbDriveA"), sink.mountPoints);
+		// bei mounts steht die Quelle vorne
+		assertEquals(list("/dev/block/vold/179:65", "/dev/block/sda1"), sink.labels);
+	}
+
+
+	@Test
+	public void octalEscapes() {
+		String mountinfo = "36 1 0:23 / /storage/My\\040Card rw,noatime - vfat /dev/block/vold/My\\040Card rw\n"
+				+ "37 1 0:24 / /storage/Tab\\011And\\134Backslash rw - vfat /dev/sdb1 rw\n";
+		RecordingSink sink = scan(mountinfo, "vfat");
+		assertEquals(list("/storage/My Card", "/storage/Tab\tAnd\\Backslash"), sink.mountPoints);
+		assertEquals("/dev/block/vold/My Card", sink.labels.get(0));
+
+		String mounts = "/dev/sdc1 /mnt/usb\\040stick vfat rw 0 0\n";
+		assertEquals(list("/mnt/usb stick"), scan(mounts, "vfat").mountPoints);
+	}
+
+
+	@Test
+	public void missingFile() throws IOException {
+		File f = new File(Fixtures.createTempDir("e2test"), "mountinfo");
+		MountInfoScanner scanner = new MountInfoScanner(f, MountInfoScanner.DEFAULT_TYPES);
+		assertFalse(scanner.scan(new RecordingSink(PRIMARY)));
+	}
+
+
+	/**
+	 * Der komplette Weg ueber {@link Environment2#rescanDevices()}: die beiden
+	 * Karten der Fixture werden in ein temporaeres Verzeichnis verlegt, damit
+	 * es die MountPoints tatsaechlich gibt; /storage/emulated faellt weg, weil
+	 * der primaere Speicher der Fixtures unter /mnt/sdcard liegt
+	 */
+	@Test
+	public void deviceDivEntries() throws IOException {
+		File root = Fixtures.install();
+		File storage = Fixtures.createTempDir("e2test");
+		File card = new File(storage, "1A2B-3C4D"), usb = new File(storage, "5E6F-7A8B");
+		assertTrue(card.mkdir());
+		assertTrue(usb.mkdir());
+		StringBuilder sb = new StringBuilder();
+		for (String line : Fixtures.resource("mountinfo").split("\n")) {
+			if (line.contains(" /storage/emulated ")) continue;
+			sb.append(line.replace(" /storage/", " "+storage.getPath()+"/")).append('\n');
+		}
+		File f = new File(root, "mountinfo-test");
+		Fixtures.write(f, sb.toString());
+		Environment2.setScanners(new MountInfoScanner(f, MountInfoScanner.DEFAULT_TYPES));
+		Environment2.rescanDevices();
+
+		List<Device> devices = Environment2.getDeviceList(null, false, false, false);
+		assertEquals(2, devices.size());
+		assertEquals(card.getPath(), devices.get(0).getMountPoint());
+		assertEquals(usb.getPath(), devices.get(1).getMountPoint());
+		for (Device d : devices) assertTrue(d instanceof DeviceDiv);
+		assertEquals("/mnt/media_rw/1A2B-3C4D", ((DeviceDiv) devices.get(0)).getLabel());
+		assertEquals("/dev/fuse", ((DeviceDiv) devices.get(1)).getLabel());
+		assertTrue(devices.get(0).isAvailable());
+		assertTrue(devices.get(1).isWriteable());
+		assertEquals(usb.getName(), devices.get(1).getName());
+
+		// die erste Karte wird zur zweiten SD, nicht eine Hersteller-Partition
+		assertTrue(Environment2.isSecondaryExternalStorageAvailable());
+		assertEquals("SD-Card", devices.get(0).getName());
+		assertEquals(card.getPath(), Environment2.getCardDirectory().getPath());
+	}
+
+
+	private static RecordingSink scan(String content, String... types) {
+		RecordingSink sink = new RecordingSink(PRIMARY);
+		char[] buf = content.toCharArray();
+		new MountInfoScanner(null, types).parse(buf, buf.length, sink);
+		return sink;
+	}
+
+
+	private static List<String> list(String... s) {
+		List<String> l = new ArrayList<String>();
+		for (String x : s) l.add(x);
+		return l;
+	}
+}
@@ -0,0 +1,90 @@
+package me.systembug.device;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Treibt {@link MountWatcher} ueber die FileObserver-Ersatzklasse (WatchService)
+ * an: ein Verzeichnis, das unter einem beobachteten "Mount"-Verzeichnis
+ * angelegt oder geloescht wird, muss zu einem Rescan und zum Callback fuehren.
+ */
+public class MountWatcherTest {
+	/** etwas mehr als das Zeitfenster des MountWatchers */
+	private static final long SETTLE = 600;
+
+	private File mDir;
+	private MountWatcher mWatcher;
+	private volatile CountDownLatch mCalls;
+
+
+	@Before
+	public void setUp() throws IOException {
+		Fixtures.install();
+		Environment2.rescanDevices();
+		mDir = Fixtures.createTempDir("e2mount");
+		mCalls = new CountDownLatch(1);
+		mWatcher = new MountWatcher(new String[] { mDir.getPath() }, 0, new Runnable() {
+			@Override public void run() { mCalls.countDown(); }
+		});
+		mWatcher.start();
+	}
+
+
+	@After
+	public void tearDown() {
+		mWatcher.stop();
+	}
+
+
+	@Test
+	public void createAndDelete() throws InterruptedException {
+		int generation = Environment2.getGeneration();
+		File card = new File(mDir, "1A2B-3C4D");
+		assertTrue(card.mkdir());
+		assertTrue("kein Update nach mkdir", mCalls.await(5, TimeUnit.SECONDS));
+		// unbekannter MountPoint direkt im beobachteten Verzeichnis: Rescan
+		assertTrue(Environment2.getGeneration()>generation);
+
+		generation = Environment2.getGeneration();
+		mCalls = new CountDownLatch(1);
+		assertTrue(card.delete());
+		assertTrue("kein Update nach delete", mCalls.await(5, TimeUnit.SECONDS));
+		assertTrue(Environment2.getGeneration()>generation);
+	}
+
+
+	@Test
+	public void burstIsCoalesced() throws InterruptedException {
+		mCalls = new CountDownLatch(3);
+		for (int i=0; i<3; i++) assertTrue(new File(mDir, "usb"+i).mkdir());
+		// drei Ereignisse innerhalb des Zeitfensters ergeben ein Update
+		assertFalse(mCalls.await(2*SETTLE, TimeUnit.MILLISECONDS));
+		assertEquals(2, mCalls.getCount());
+	}
+
+
+	@Test
+	public void stopDropsPendingUpdate() throws InterruptedException {
+		int generation = Environment2.getGeneration();
+		assertTrue(new File(mDir, "5E6F-7A8B").mkdir());
+		// das Ereignis ist angekommen, das Update wartet noch auf das Ende des Zeitfensters
+		Thread.sleep(50);
+		mWatcher.stop();
+		assertFalse(mCalls.await(SETTLE, TimeUnit.MILLISECONDS));
+		assertEquals(generation, Environment2.getGeneration());
+
+		// und nach stop() kommen auch keine neuen Ereignisse mehr an
+		assertTrue(new File(mDir, "9C0D-1E2F").mkdir());
+		assertFalse(mCalls.await(SETTLE, TimeUnit.MILLISECONDS));
+	}
+}
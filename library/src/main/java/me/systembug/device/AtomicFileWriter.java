@@ -0,0 +1,343 @@
+package me.systembug.device;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Schreibt Dateien auf einem Device atomar (Temp-Datei, fsync, rename), fasst
+ * dabei aber die Auftraege mehrerer Threads zu Gruppen zusammen: erst werden
+ * alle Temp-Dateien einer Gruppe geschrieben, dann alle gesynct, dann alle
+ * umbenannt. Jede Datei bekommt dabei weiterhin ihr eigenes fsync (Java
+ * bietet kein syncfs fuer ein ganzes Dateisystem), aber erst, wenn die Daten
+ * der ganzen Gruppe im Page-Cache liegen, und die Syncs laufen ohne
+ * dazwischenliegende Schreibvorgaenge hintereinander ab. Ist fsync auf dem
+ * Device teuer ({@link IoProfile#isFsyncExpensive()}), wird nur fdatasync
+ * ({@link FileChannel#force(boolean) force(false)}) benutzt. Nach jeder
+ * Gruppe wird der Messwert des Devices im {@link SpaceCache} verworfen.
+ * <p>
+ * Ein rename zwischen zwei Dateisystemen schlaegt fehl bzw. wird von manchen
+ * Hilfsfunktionen still durch eine Kopie ersetzt, die dann nicht mehr atomar
+ * ist. Deshalb liegen die Temp-Dateien immer im Zielverzeichnis, und bei
+ * {@link #move(File, File)} wird vorher per Mount-Tabelle geprueft, dass
+ * Quelle und Ziel auf demselben Dateisystem liegen; sonst schlaegt der Auftrag
+ * mit einer IOException fehl. Kopiert wird nie.
+ * <pre>
+ * AtomicFileWriter w = new AtomicFileWriter(device);
+ * Future&lt;File&gt; f = w.write(new File(dir, "a.json"), bytes);
+ * ...
+ * f.get(); // wirft ExecutionException mit der IOException, falls es nicht geklappt hat
+ * </pre>
+ *
+ * @since 1.6
+ */
+public class AtomicFileWriter {
+	/** Default fuer die hoechste Zahl an Dateien je Gruppe (und damit offener Dateien) */
+	public static final int DEFAULT_BATCH = 32;
+	private static final String TMP_SUFFIX = ".e2tmp";
+	private static final AtomicInteger mSequence = new AtomicInteger();
+
+	/** liefert den Inhalt einer Datei; wird im Thread des Writers aufgerufen */
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	/** 
+	 * ein Auftrag und zugleich sein Future; das Ergebnis setzt der Writer. 
+	 * Abbrechen geht nur, solange nicht umbenannt wird.
+	 */
+	private static final class Request implements Future<File> {
+		private static final int PENDING = 0, RENAMING = 1, DONE = 2, FAILED = 3, CANCELLED = 4;
+		
+		final File mTarget, mSource;
+		final Content mContent;
+		File mTmp;
+		FileOutputStream mOut;
+		RandomAccessFile mSync;
+		private int mState = PENDING;
+		private IOException mError;
+
+		Request(File target, File source, Content content) {
+			mTarget = target;
+			mSource = source;
+			mContent = content;
+		}
+
+		@Override public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+			if (mState!=PENDING) return false;
+			mState = CANCELLED;
+			notifyAll();
+			return true;
+		}
+
+		@Override public synchronized boolean isCancelled() { return mState==CANCELLED; }
+		@Override public synchronized boolean isDone() { return mState>=DONE; }
+
+		@Override public synchronized File get() throws InterruptedException, ExecutionException {
+			while (mState<DONE) wait();
+			return result();
+		}
+
+		@Override public synchronized File get(long timeout, TimeUnit unit) 
+				throws InterruptedException, ExecutionException, TimeoutException {
+			long end = System.nanoTime() + unit.toNanos(timeout);
+			while (mState<DONE) {
+				long left = end - System.nanoTime();
+				if (left<=0) throw new TimeoutException();
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+			return result();
+		}
+
+		private File result() throws ExecutionException {
+			if (mState==CANCELLED) throw new CancellationException();
+			if (mState==FAILED) throw new ExecutionException(mError);
+			return mTarget;
+		}
+
+		/** @return false, wenn der Auftrag abgebrochen wurde; danach geht cancel() nicht mehr */
+		synchronized boolean startRename() {
+			if (mState!=PENDING) return false;
+			mState = RENAMING;
+			return true;
+		}
+
+		synchronized void done() {
+			mState = DONE;
+			notifyAll();
+		}
+
+		synchronized void setFailed(IOException e) {
+			if (mState>=DONE) return;
+			mError = e;
+			mState = FAILED;
+			notifyAll();
+		}
+
+		void fail(IOException e) {
+			discard();
+			setFailed(e);
+		}
+
+		/** raeumt auf, wenn der Auftrag fehlgeschlagen ist oder abgebrochen wurde */
+		void discard() {
+			close();
+			if (mTmp!=null) mTmp.delete();
+		}
+
+		void close() {
+			try {
+				if (mOut!=null) mOut.close();
+				if (mSync!=null) mSync.close();
+			} catch (IOException e) {
+				// war schon gesynct oder ist ohnehin fehlgeschlagen
+			}
+			mOut = null;
+			mSync = null;
+		}
+	}
+
+	private final Device mDevice;
+	private final int mMaxBatch;
+	private final ConcurrentLinkedQueue<Request> mQueue = new ConcurrentLinkedQueue<Request>();
+	private final AtomicBoolean mScheduled = new AtomicBoolean();
+	private final ExecutorService mExecutor;
+
+	private final Runnable mDrain = new Runnable() {
+		@Override public void run() {
+			do {
+				ArrayList<Request> batch = new ArrayList<Request>(mMaxBatch);
+				Request r;
+				while (batch.size()<mMaxBatch && (r = mQueue.poll())!=null) batch.add(r);
+				if (batch.isEmpty()) {
+					mScheduled.set(false);
+					// es koennte zwischen poll und set(false) etwas dazugekommen sein
+					if (mQueue.isEmpty() || !mScheduled.compareAndSet(false, true)) return;
+				} else {
+					commit(batch);
+				}
+			} while (true);
+		}
+	};
+
+
+	/**
+	 * @param device das Device, auf dem alle Ziele liegen muessen
+	 */
+	public AtomicFileWriter(Device device) {
+		this(device, DEFAULT_BATCH);
+	}
+
+
+	/**
+	 * @param device das Device, auf dem alle Ziele liegen muessen
+	 * @param maxBatch hoechstens so viele Dateien je Gruppe
+	 */
+	public AtomicFileWriter(Device device, int maxBatch) {
+		if (device==null) throw new IllegalArgumentException("device darf nicht null sein");
+		if (maxBatch<1) throw new IllegalArgumentException("maxBatch muss mindestens 1 sein");
+		mDevice = device;
+		mMaxBatch = maxBatch;
+		final String name = "AtomicFileWriter-"+new File(device.getMountPoint()).getName();
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+
+	public Device getDevice() { return mDevice; }
+
+
+	/**
+	 * Schreibt data atomar nach target; eine vorhandene Datei wird ersetzt
+	 * @return liefert target, sobald die Datei umbenannt und damit sichtbar ist
+	 */
+	public Future<File> write(File target, final byte[] data) {
+		if (data==null) throw new IllegalArgumentException("data darf nicht null sein");
+		return write(target, new Content() {
+			@Override public void writeTo(OutputStream out) throws IOException { out.write(data); }
+		});
+	}
+
+
+	/**
+	 * Schreibt den Inhalt atomar nach target; gepuffert mit
+	 * {@link IoProfile#getBufferSize()} des Devices
+	 * @return liefert target, sobald die Datei umbenannt und damit sichtbar ist
+	 */
+	public Future<File> write(File target, Content content) {
+		if (content==null) throw new IllegalArgumentException("content darf nicht null sein");
+		return enqueue(new Request(check(target, "target"), null, content));
+	}
+
+
+	/**
+	 * Synct eine fertig geschriebene Datei (z.B. einen Download) und benennt
+	 * sie in target um. Liegen beide nicht auf demselben Dateisystem, schlaegt
+	 * der Auftrag mit einer IOException fehl, source bleibt dann unveraendert.
+	 * @return liefert target, sobald die Datei umbenannt ist
+	 */
+	public Future<File> move(File source, File target) {
+		return enqueue(new Request(check(target, "target"), check(source, "source"), null));
+	}
+
+
+	/**
+	 * Nimmt keine Auftraege mehr an; schon angenommene werden noch ausgefuehrt
+	 */
+	public void shutdown() {
+		mExecutor.shutdown();
+	}
+
+
+	private File check(File f, String name) {
+		if (f==null) throw new IllegalArgumentException(name+" darf nicht null sein");
+		Device d = Environment2.deviceForPath(f);
+		// nach einem Rescan gibt es neue Device-Objekte, daher der Vergleich per MountPoint
+		if (d==null || !d.getMountPoint().equals(mDevice.getMountPoint()))
+			throw new IllegalArgumentException(f+" liegt nicht auf "+mDevice.getMountPoint());
+		return f.getAbsoluteFile();
+	}
+
+
+	private Future<File> enqueue(Request r) {
+		if (mExecutor.isShutdown()) throw new RejectedExecutionException("AtomicFileWriter ist beendet");
+		mQueue.add(r);
+		if (mScheduled.compareAndSet(false, true)) {
+			try {
+				mExecutor.execute(mDrain);
+			} catch (RejectedExecutionException e) {
+				mScheduled.set(false);
+				mQueue.remove(r);
+				throw e;
+			}
+		}
+		return r;
+	}
+
+
+	/** die drei Phasen fuer eine Gruppe; Fehler betreffen nur den jeweiligen Auftrag */
+	private void commit(ArrayList<Request> batch) {
+		long t = Metrics.start();
+		IoProfile profile = mDevice.getIoProfile();
+		int buffer = profile.getBufferSize();
+		boolean dataOnly = profile.isFsyncExpensive();
+		// 1. schreiben, ohne zu syncen; die Dateien bleiben offen
+		for (Request r : batch) {
+			if (r.isDone()) continue;
+			try {
+				if (r.mSource!=null) {
+					String a = FileSystemInfo.mountPointOf(r.mSource.getPath());
+					String b = FileSystemInfo.mountPointOf(r.mTarget.getParent());
+					if (a==null || !a.equals(b))
+						throw new IOException(r.mSource+" und "+r.mTarget+" liegen nicht auf demselben Dateisystem");
+					r.mSync = new RandomAccessFile(r.mSource, "rw");
+				} else {
+					r.mTmp = new File(r.mTarget.getParentFile(),
+							"."+r.mTarget.getName()+"."+mSequence.incrementAndGet()+TMP_SUFFIX);
+					r.mOut = new FileOutputStream(r.mTmp);
+					BufferedOutputStream out = new BufferedOutputStream(r.mOut, buffer);
+					r.mContent.writeTo(out);
+					out.flush();
+				}
+			} catch (IOException e) {
+				r.fail(e);
+			} catch (RuntimeException e) {
+				r.fail(new IOException(e));
+			}
+		}
+		// 2. alle syncen, direkt hintereinander und erst, wenn alle Daten geschrieben sind
+		for (Request r : batch) {
+			if (r.isDone()) {
+				r.discard();
+				continue;
+			}
+			try {
+				FileChannel c = r.mOut!=null ? r.mOut.getChannel() : r.mSync.getChannel();
+				// force(false) ist fdatasync: ohne Zeitstempel, die auf FAT extra kosten
+				if (dataOnly) c.force(false);
+				else c.force(true);
+				r.close();
+			} catch (IOException e) {
+				r.fail(e);
+			}
+		}
+		// 3. umbenennen
+		for (Request r : batch) {
+			if (r.isDone()) {
+				r.discard();
+				continue;
+			}
+			if (!r.startRename()) {
+				r.discard();
+				continue;
+			}
+			File from = r.mSource!=null ? r.mSource : r.mTmp;
+			if (from.renameTo(r.mTarget)) r.done();
+			else r.fail(new IOException("kann "+from+" nicht in "+r.mTarget+" umbenennen"));
+		}
+		SpaceCache.invalidate(mDevice);
+		Metrics.stop(Metrics.ATOMIC_COMMIT, t);
+	}
+}
@@ -0,0 +1,55 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.os.Environment;
+
+/**
+ * Das vorab bestimmte Ziel der getCard*-Methoden von {@link Environment2}:
+ * die zweite SD-Karte, falls vorhanden und eingelegt, sonst der primaere
+ * externe Speicher, samt Verzeichnis und (nur fuer die zweite SD) Zustand.
+ * Gilt fuer genau eine Generation (siehe {@link Environment2#getGeneration()}); Environment2
+ * verwirft die Route bei jedem Update bzw. Rescan und baut sie beim
+ * naechsten Aufruf neu auf. Ein Aufruf kostet damit das Lesen eines
+ * volatile-Felds; die oeffentlichen Verzeichnisse werden je Name einmal
+ * angelegt und dann geteilt.
+ */
+final class CardRoute {
+	final int mGeneration;
+	final Device mDevice;
+	final boolean mSecondary;
+	final File mDirectory;
+	/** nur fuer die zweite SD; der primaere Speicher wird live bei Environment abgefragt */
+	final String mState;
+	private final ConcurrentHashMap<String, File> mPublic = new ConcurrentHashMap<String, File>(8);
+
+	CardRoute(int generation, DeviceSnapshot s) {
+		mGeneration = generation;
+		mSecondary = s.isSecondaryAvailable();
+		if (mSecondary) {
+			mDevice = s.mSecondary;
+			mDirectory = s.mSecondary.getFile();
+			mState = s.mSecondary.getState();
+		} else {
+			mDevice = s.mPrimary;
+			mDirectory = Environment.getExternalStorageDirectory();
+			mState = null;
+		}
+	}
+
+
+	/** @param dir das Unterverzeichnis; null nur fuer den primaeren Speicher */
+	File getPublicDirectory(String dir) {
+		if (dir==null) {
+			if (mSecondary) throw new IllegalArgumentException("s darf nicht null sein");
+			return mDevice.getPublicDirectory(null);
+		}
+		File f = mPublic.get(dir);
+		if (f==null) {
+			f = mDevice.getPublicDirectory(dir);
+			if (f!=null) mPublic.put(dir, f);
+		}
+		return f;
+	}
+}
@@ -1,6 +1,7 @@
 package me.systembug.device;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
 
 import android.content.Context;
 import android.os.Environment;
@@ -23,18 +24,86 @@ import android.os.Environment;
  * 
  */
 public abstract class Device  {
-	protected Size mSize;
+	protected volatile Size mSize;
 	protected String mMountPoint;
 	
+	/** Schluessel fuer das Cache-Verzeichnis in {@link #getCachedDir(Context, String, int)} */
+	protected static final String KEY_CACHE_DIR = "\0cache";
+	
+	private static final class DirEntry {
+		final File dir;
+		final String pkg;
+		final int generation;
+		DirEntry(File dir, String pkg, int generation) {
+			this.dir = dir;
+			this.pkg = pkg;
+			this.generation = generation;
+		}
+	}
+	private final ConcurrentHashMap<String, DirEntry> mDirs = new ConcurrentHashMap<String, DirEntry>(4);
+	private volatile FileSystemInfo mFileSystem;
+	private volatile File mFile;
+	
 	// Zugriff auf interne Felder -------------------------------------------------------------------
-	public final File getFile() { return new File(mMountPoint); }
-	public final Size getSize() { return mSize; }
+	/** @return der MountPoint als File; immer dasselbe Objekt (seit 1.6) */
+	public final File getFile() { 
+		File f = mFile;
+		if (f==null) mFile = f = new File(mMountPoint);
+		return f;
+	}
 	public final String getMountPoint() { return mMountPoint; }
 	public abstract String getName();
 	public abstract boolean isRemovable();
 	public abstract boolean isAvailable();
 	public abstract boolean isWriteable();
 
+	/**
+	 * Liefert Groesse und freien Speicher des Devices. Sind die Werte aelter als 
+	 * {@link SpaceCache#getTtl()} oder wurden sie per {@link SpaceCache#invalidate(Device)}
+	 * verworfen, werden sie vorher ueber den {@link SpaceCache} aufgefrischt; 
+	 * ansonsten kostet der Aufruf keinen Zugriff aufs Dateisystem.
+	 * @return die Groesse oder null, falls das Device noch nie verfuegbar war
+	 */
+	public final Size getSize() { 
+		Size s = mSize;
+		if (s!=null && (s.getAge()>=SpaceCache.getTtl() || s.mGeneration!=SpaceCache.getGeneration(mMountPoint)) 
+				&& isAvailable()) 
+			mSize = s = SpaceCache.get(mMountPoint);
+		return s; 
+	}
+
+	/**
+	 * Liefert die per {@link DeviceBenchmark#measure(Device, Context)} gemessene
+	 * Geschwindigkeit des Devices, falls fuer das aktuell eingehaengte Volume 
+	 * schon gemessen wurde.
+	 * @return das Messergebnis oder null
+	 * @since 1.6
+	 */
+	public final DevicePerformance getPerformance() { return DeviceBenchmark.getResult(this); }
+
+	/**
+	 * Liefert Typ, Mount-Optionen und Blockgroesse des Dateisystems laut
+	 * Mount-Tabelle. Wird einmal je {@link Environment2#getGeneration()} 
+	 * ermittelt, danach kostet der Aufruf keinen Zugriff aufs Dateisystem.
+	 * @return nie null; ist das Dateisystem nicht zu ermitteln, liefert
+	 * 		{@link FileSystemInfo#getType()} {@link FileSystemInfo#UNKNOWN}
+	 * @since 1.6
+	 */
+	public final FileSystemInfo getFileSystem() {
+		int generation = Environment2.getGeneration();
+		FileSystemInfo f = mFileSystem;
+		if (f==null || f.mGeneration!=generation) mFileSystem = f = FileSystemInfo.lookup(this, generation);
+		return f;
+	}
+
+	/**
+	 * Empfehlungen fuer Puffergroesse, fsync und Dateien je Verzeichnis,
+	 * abgeleitet aus {@link #getFileSystem()}
+	 * @return nie null
+	 * @since 1.6
+	 */
+	public final IoProfile getIoProfile() { return getFileSystem().getIoProfile(); }
+
 	/**
 	 * sollte die Verf?gbarkeit des Devices erneuern; wird vom BroadcastReceiver
 	 * von Environment2 aufgerufen.
@@ -99,11 +168,53 @@ public abstract class Device  {
 	 * 	vorhanden, wird das Verzeichnis angelegt
 	 */
 	protected File getFilesDirLow(Context ctx, String s) {
-		if (s!=null && !s.startsWith("/")) s = "/" + s;
-		File f = new File(getMountPoint() + Environment2.PATH_PREFIX + ctx.getPackageName() + s);
+		int generation = Environment2.getGeneration();
+		File f = getCachedDir(ctx, s, generation);
+		if (f!=null) return f;
+		
+		String sub = s==null ? "" : s.startsWith("/") ? s : "/" + s;
+		f = new File(getMountPoint() + Environment2.PATH_PREFIX + ctx.getPackageName() + sub);
 		if (!f.isDirectory() && isWriteable()) 
 			f.mkdirs(); 
-		return f;
+		return putCachedDir(ctx, s, generation, f);
+	}
+	
+	
+	/**
+	 * Liefert ein schon einmal ermitteltes (und ggf. angelegtes) App-Verzeichnis,
+	 * ohne das Dateisystem anzufassen. Die Eintraege gelten bis zum naechsten
+	 * Update bzw. Rescan ({@link Environment2#getGeneration()}), also bis 
+	 * zum naechsten An- oder Abmelden eines Devices; danach wird einmal neu 
+	 * geprueft. Loescht die App ein solches Verzeichnis selbst, muss sie es
+	 * auch selbst wieder anlegen.
+	 * 
+	 * @param ctx der Context, dessen Paketname zum Eintrag passen muss
+	 * @param s das Unterverzeichnis wie beim Aufruf von getFilesDir o.ae.
+	 * 		oder {@link #KEY_CACHE_DIR}; kann null sein
+	 * @param generation die vor dem Ermitteln gelesene Generation
+	 * @return das Verzeichnis oder null, falls nicht (mehr) im Cache
+	 * @since 1.6
+	 */
+	protected final File getCachedDir(Context ctx, String s, int generation) {
+		DirEntry e = mDirs.get(s==null ? "" : s);
+		if (e!=null && e.generation==generation && e.pkg.equals(ctx.getPackageName())) {
+			Metrics.count(Metrics.DIR_CACHE_HIT);
+			return e.dir;
+		}
+		Metrics.count(Metrics.DIR_CACHE_MISS);
+		return null;
+	}
+	
+	
+	/**
+	 * Merkt sich ein Verzeichnis fuer {@link #getCachedDir(Context, String, int)}
+	 * @return dir, damit man direkt {@code return putCachedDir(...)} schreiben kann; 
+	 * 		null wird nicht gespeichert
+	 * @since 1.6
+	 */
+	protected final File putCachedDir(Context ctx, String s, int generation, File dir) {
+		if (dir!=null) mDirs.put(s==null ? "" : s, new DirEntry(dir, ctx.getPackageName(), generation));
+		return dir;
 	}
 
 
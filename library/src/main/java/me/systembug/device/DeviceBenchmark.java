@@ -0,0 +1,164 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.os.Process;
+
+/**
+ * Misst, wie schnell ein Device tatsaechlich ist: sequentielles Schreiben,
+ * zufaelliges Schreiben von 4-KB-Bloecken und die Dauer eines fsync (zum
+ * Lesen siehe {@link DevicePerformance}). Eine billige microSD-Karte ist schnell zehnmal langsamer als
+ * der interne Flash, was sich an der Reihenfolge von 
+ * {@link Environment2#getDevices(String, boolean, boolean, boolean)} nicht ablesen laesst.
+ * <p>
+ * Gemessen wird mit einer temporaeren Datei im Cache-Verzeichnis der App auf 
+ * dem Device; das dauert je nach Karte einige Sekunden und gehoert daher in
+ * einen Hintergrund-Thread. Die Ergebnisse werden pro Volume (MountPoint und
+ * Gesamtgroesse, damit eine andere Karte im selben Slot neu gemessen wird) 
+ * gespeichert und sind danach ueber {@link Device#getPerformance()} abrufbar.
+ * 
+ * @since 1.6
+ */
+public final class DeviceBenchmark {
+	private static final int SEQ_SIZE = 8*1024*1024;
+	private static final int SEQ_CHUNK = 64*1024;
+	private static final int BLOCK = 4096;
+	private static final int RANDOM_OPS = 256;
+	private static final int FSYNC_OPS = 16;
+	
+	private static final ConcurrentHashMap<String, DevicePerformance> mResults = new ConcurrentHashMap<String, DevicePerformance>();
+	/** macht die Testdatei je Aufruf eindeutig, falls mehrere Threads dasselbe Verzeichnis messen */
+	private static final AtomicInteger mSequence = new AtomicInteger();
+	
+	private DeviceBenchmark() { }
+	
+	
+	/**
+	 * Misst das Device, falls fuer dieses Volume noch kein Ergebnis vorliegt.
+	 * @param d ein verfuegbares, beschreibbares Device
+	 * @param ctx der Context der App (fuer das Cache-Verzeichnis)
+	 * @return das (ggf. zwischengespeicherte) Ergebnis
+	 * @throws IOException falls das Device nicht beschreibbar ist oder beim Messen 
+	 * 		ein Fehler auftritt
+	 */
+	public static DevicePerformance measure(Device d, Context ctx) throws IOException {
+		DevicePerformance p = getResult(d);
+		if (p!=null) return p;
+		if (!d.isWriteable()) throw new IOException(d.getMountPoint()+" ist nicht beschreibbar");
+		File dir = d.getCacheDir(ctx);
+		if (dir==null) throw new IOException("kein Cache-Verzeichnis auf "+d.getMountPoint());
+		Size s = d.getSize();
+		p = measure(dir, s==null ? 0 : s.getStats().getTotal());
+		mResults.put(d.getMountPoint(), p);
+		return p;
+	}
+	
+	
+	/**
+	 * @return das gespeicherte Ergebnis fuer das Volume, das gerade unter dem 
+	 * 		MountPoint des Devices haengt, oder null
+	 */
+	static DevicePerformance getResult(Device d) {
+		DevicePerformance p = mResults.get(d.getMountPoint());
+		if (p==null) return null;
+		Size s = d.mSize;
+		return s!=null && s.getStats().getTotal()==p.mTotal ? p : null;
+	}
+	
+	
+	/**
+	 * Verwirft alle Ergebnisse, z.B. um nach einem Firmware-Update neu zu messen
+	 */
+	public static void clear() {
+		mResults.clear();
+	}
+	
+	
+	/**
+	 * Sortiert Devices nach gemessener Schreibrate; nicht gemessene kommen ans Ende
+	 * und behalten untereinander ihre Reihenfolge.
+	 * @param devices wird sortiert
+	 * @return devices
+	 */
+	public static Device[] sortBySpeed(Device[] devices) {
+		Arrays.sort(devices, new Comparator<Device>() {
+			@Override public int compare(Device a, Device b) {
+				DevicePerformance pa = a.getPerformance(), pb = b.getPerformance();
+				if (pa==null) return pb==null ? 0 : 1;
+				if (pb==null) return -1;
+				return DevicePerformance.BY_WRITE_SPEED.compare(pa, pb);
+			}
+		});
+		return devices;
+	}
+	
+	
+	/**
+	 * Die eigentliche Messung in einem Verzeichnis, ohne Cache. Die Testdatei
+	 * wird danach geloescht; gleichzeitige Messungen im selben Verzeichnis
+	 * benutzen getrennte Dateien, bremsen sich aber gegenseitig.
+	 * @param dir ein beschreibbares Verzeichnis
+	 * @param total die Gesamtgroesse des Volumes, wird im Ergebnis vermerkt
+	 */
+	public static DevicePerformance measure(File dir, long total) throws IOException {
+		File f = new File(dir, ".e2bench-"+Process.myPid()+"-"+mSequence.incrementAndGet());
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer chunk = ByteBuffer.allocateDirect(SEQ_CHUNK);
+			Random rnd = new Random();
+			byte[] fill = new byte[SEQ_CHUNK];
+			rnd.nextBytes(fill); // nicht komprimierbar
+			chunk.put(fill);
+			
+			// sequentiell schreiben, inklusive fsync, sonst misst man nur den Page-Cache
+			long t = System.nanoTime();
+			for (long pos=0; pos<SEQ_SIZE; pos+=SEQ_CHUNK) {
+				chunk.clear();
+				while (chunk.hasRemaining()) ch.write(chunk, pos+chunk.position());
+			}
+			ch.force(false);
+			double seqWrite = rate(SEQ_SIZE, System.nanoTime()-t);
+			
+			// zufaellig 4K schreiben
+			int blocks = SEQ_SIZE/BLOCK;
+			ByteBuffer block = ByteBuffer.allocateDirect(BLOCK);
+			t = System.nanoTime();
+			for (int i=0; i<RANDOM_OPS; i++) {
+				block.clear();
+				ch.write(block, (long) rnd.nextInt(blocks)*BLOCK);
+			}
+			ch.force(false);
+			double randomWrite = rate(RANDOM_OPS, System.nanoTime()-t);
+			
+			// fsync nach jeweils einem kleinen Schreibzugriff
+			t = System.nanoTime();
+			for (int i=0; i<FSYNC_OPS; i++) {
+				block.clear();
+				ch.write(block, (long) i*BLOCK);
+				ch.force(false);
+			}
+			long fsync = (System.nanoTime()-t) / FSYNC_OPS / 1000;
+			
+			return new DevicePerformance(total, seqWrite, randomWrite, fsync, System.currentTimeMillis());
+		} finally {
+			raf.close();
+			f.delete();
+		}
+	}
+	
+	
+	private static double rate(long amount, long nanos) {
+		return nanos<=0 ? 0 : amount * 1e9 / nanos;
+	}
+}
@@ -0,0 +1,57 @@
+package me.systembug.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Die Aenderungen an den Devices seit dem letzten Update, einmal pro 
+ * {@link Environment2#updateDevices()} bzw. {@link Environment2#rescanDevices()} 
+ * berechnet und an alle {@link Listener} verteilt. Die Listen sind unveraenderlich.
+ * <ul>
+ * <li>{@link #getMounted()}: neu verfuegbare Devices
+ * <li>{@link #getUnmounted()}: nicht mehr verfuegbare oder ganz verschwundene Devices
+ * <li>{@link #getWriteableChanged()}: weiterhin verfuegbar, aber von read-only auf
+ * 	read-write gewechselt oder umgekehrt
+ * <li>{@link #getSizeChanged()}: der freie Speicher hat sich um mehr als 
+ * 	{@link Environment2#setSizeChangeThreshold(long)} veraendert
+ * </ul>
+ * 
+ * @see Environment2#addDeviceListener(Listener)
+ * @since 1.6
+ */
+public final class DeviceDiff {
+	
+	/**
+	 * Wird nach jedem Update aufgerufen, bei dem sich etwas geaendert hat,
+	 * und zwar in dem Thread, der das Update durchfuehrt (beim 
+	 * {@link RescanScheduler} also im Hintergrund).
+	 */
+	public interface Listener {
+		void onDevicesChanged(DeviceDiff diff);
+	}
+	
+	private final List<Device> mMounted, mUnmounted, mWriteableChanged, mSizeChanged;
+	
+	DeviceDiff(ArrayList<Device> mounted, ArrayList<Device> unmounted, ArrayList<Device> writeable, ArrayList<Device> size) {
+		mMounted = Collections.unmodifiableList(mounted);
+		mUnmounted = Collections.unmodifiableList(unmounted);
+		mWriteableChanged = Collections.unmodifiableList(writeable);
+		mSizeChanged = Collections.unmodifiableList(size);
+	}
+	
+	public List<Device> getMounted() { return mMounted; }
+	public List<Device> getUnmounted() { return mUnmounted; }
+	public List<Device> getWriteableChanged() { return mWriteableChanged; }
+	public List<Device> getSizeChanged() { return mSizeChanged; }
+	
+	public boolean isEmpty() {
+		return mMounted.isEmpty() && mUnmounted.isEmpty() && mWriteableChanged.isEmpty() && mSizeChanged.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "DeviceDiff[mounted="+mMounted.size()+", unmounted="+mUnmounted.size()
+				+", writeable="+mWriteableChanged.size()+", size="+mSizeChanged.size()+"]";
+	}
+}
@@ -4,34 +4,51 @@ import java.io.File;
 
 import android.content.Context;
 import android.os.Environment;
-import android.text.TextUtils.SimpleStringSplitter;
 
 /**
  * Ein {@link Device}, das ein speziell gemountetes Ger?t beschreibt, z.B.
  * die Secondary-SDs vieler moderner Ger?te und die USB-Ger?te bzw.
- * Kartenleser. Erkennt die Pfade aus vold.fstab (siehe {@link Environment2}
+ * Kartenleser. Erkennt die Pfade aus vold.fstab oder mountinfo (siehe {@link DeviceScanner})
  * und emuliert die getXXXDir-Methoden, die sonst {@link Context} hat.
  * 
  * @author Jockel
  *
  */
 class DeviceDiv extends Device {
-	private String mLabel, mName;
-	private boolean mAvailable, mWriteable;
+	private String mLabel, mName, mNameLower;
+	private volatile boolean mAvailable, mWriteable;
+	private final DeviceExternal mPrimary;
 	
 
 	/**
-	 * Constructor, der eine Zeile aus vold.fstab bekommt (dev_mount schon weggelesen)
-	 * @param sp der StringSplitter, aus dem die Zeile gelesen wird, wobei
-	 * 		"dev_mount" schon weggelesen sein muss.
-	 * @return this f?r Verkettungen wie {@code return new Device().initFrom...() } 
+	 * Constructor, der die Werte eines {@link DeviceScanner} bekommt
+	 * @param label die Bezeichnung aus vold.fstab bzw. das Blockdevice aus mountinfo
+	 * @param mountPoint der Pfad, unter dem das Device eingehaengt ist
+	 * @param primary der primaere Speicher desselben Scans, um Mounts innerhalb
+	 * 		von /mnt/sdcard zu erkennen
 	 */
-	DeviceDiv(SimpleStringSplitter sp) {
-		mLabel = sp.next().trim();
-		mMountPoint = sp.next().trim();
+	DeviceDiv(String label, String mountPoint, DeviceExternal primary) {
+		mLabel = label;
+		mPrimary = primary;
+		mMountPoint = mountPoint;
 		updateState();
 	}
 	
+	
+	/**
+	 * Constructor fuer {@link SnapshotStore}: uebernimmt den gespeicherten Zustand,
+	 * ohne das Dateisystem anzufassen
+	 */
+	DeviceDiv(String label, String mountPoint, DeviceExternal primary, String name, boolean available, boolean writeable, Size size) {
+		mLabel = label;
+		mPrimary = primary;
+		mMountPoint = mountPoint;
+		setName(name);
+		mAvailable = available;
+		mWriteable = writeable;
+		mSize = size;
+	}
+	
 	@Override
 	public boolean isAvailable() { return mAvailable; }
 
@@ -40,13 +57,14 @@ class DeviceDiv extends Device {
 
 	@Override
 	protected void updateState() {
+		Metrics.count(Metrics.PROBE);
 		File f = new File(mMountPoint);
 		setName(f.getName()); // letzter Teil des Pfads
 		if (mAvailable = f.isDirectory() && f.canRead()) { // ohne canRead() klappts z.B. beim Note2 nicht
-			mSize = Size.getSpace(f); 
+			mSize = SpaceCache.get(mMountPoint); 
 			mWriteable = f.canWrite();
 			// Korrektur, falls in /mnt/sdcard gemountet (z.B. Samsung)
-			if (mMountPoint.startsWith(Environment2.mPrimary.mMountPoint) && mSize.equals(Environment2.mPrimary.mSize)) 
+			if (mMountPoint.startsWith(mPrimary.mMountPoint) && mPrimary.mSize!=null && mSize.getStats().sameValues(mPrimary.mSize.getStats())) 
 				mAvailable = mWriteable = false;
 		} else 
 			mWriteable = false;
@@ -56,7 +74,15 @@ class DeviceDiv extends Device {
 	public final String getLabel() { return mLabel; }
 
 	public String getName() { return mName; }
-	protected final void setName(String name) { mName = name; }
+	protected final void setName(String name) { 
+		if (!name.equals(mName)) {
+			mName = name; 
+			mNameLower = name.toLowerCase();
+		}
+	}
+	
+	/** der Name fuer die Suche in {@link Environment2#getDevices(String, boolean, boolean, boolean)} */
+	final String getNameLowerCase() { return mNameLower; }
 
 	@Override
 	public boolean isRemovable() { return true; }
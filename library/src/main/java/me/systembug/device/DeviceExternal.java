@@ -24,8 +24,8 @@ import android.os.Environment;
  *
  */
 class DeviceExternal extends Device {
-	private boolean mRemovable; 
-	private String mState;
+	private volatile boolean mRemovable; 
+	private volatile String mState;
 	
 	/**
 	 * liest Parameter aus {@link Environment#getExternalStorageDirectory()},
@@ -48,15 +48,25 @@ class DeviceExternal extends Device {
 		
 		updateState();
 	}
+	
+	
+	/**
+	 * Constructor fuer {@link SnapshotStore}: uebernimmt den gespeicherten Zustand,
+	 * ohne das Dateisystem anzufassen
+	 */
+	DeviceExternal(String mountPoint, boolean removable, String state, Size size) {
+		mMountPoint = mountPoint;
+		mRemovable = removable;
+		mState = state;
+		mSize = size;
+	}
 
 	
 	@Override
 	protected void updateState() {
+		Metrics.count(Metrics.PROBE);
 		mState = Environment.getExternalStorageState();
-		if (isAvailable()) {
-			File f = new File(mMountPoint);
-			mSize = Size.getSpace(f);
-		}
+		if (isAvailable()) mSize = SpaceCache.get(mMountPoint);
 	}
 	
 	
@@ -86,9 +96,11 @@ class DeviceExternal extends Device {
 	@TargetApi(Build.VERSION_CODES.FROYO)
 	@Override
 	public File getFilesDir(Context ctx, String s) { 
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) 
-			return ctx.getExternalFilesDir(s); 
-		else 
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+			int generation = Environment2.getGeneration();
+			File f = getCachedDir(ctx, s, generation);
+			return f!=null ? f : putCachedDir(ctx, s, generation, ctx.getExternalFilesDir(s)); 
+		} else 
 			return getFilesDirLow(ctx, s);
 	}
 
@@ -96,9 +108,11 @@ class DeviceExternal extends Device {
 	@TargetApi(Build.VERSION_CODES.FROYO)
 	@Override
 	public File getCacheDir(Context ctx) { 
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) 
-			return ctx.getExternalCacheDir(); 
-		else 
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
+			int generation = Environment2.getGeneration();
+			File f = getCachedDir(ctx, KEY_CACHE_DIR, generation);
+			return f!=null ? f : putCachedDir(ctx, KEY_CACHE_DIR, generation, ctx.getExternalCacheDir()); 
+		} else 
 			return getFilesDirLow(ctx, "/cache");
 	}
 
@@ -34,7 +34,7 @@ class DeviceIntern extends Device {
 	DeviceIntern() {
 		File f = Environment.getDataDirectory();
 		mMountPoint = f.getAbsolutePath();
-		mSize = Size.getSpace(f);
+		mSize = SpaceCache.get(mMountPoint);
 	}
 
 	@Override
@@ -59,8 +59,13 @@ class DeviceIntern extends Device {
 		if (s==null)
 			return getFilesDir(ctx);
 		else {
-			File f = new File(ctx.getFilesDir(), s);
-			f.mkdir();
+			int generation = Environment2.getGeneration();
+			File f = getCachedDir(ctx, s, generation);
+			if (f==null) {
+				f = new File(ctx.getFilesDir(), s);
+				f.mkdir();
+				putCachedDir(ctx, s, generation, f);
+			}
 			return f;
 		}
 	}
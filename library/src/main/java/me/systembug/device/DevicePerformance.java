@@ -0,0 +1,55 @@
+package me.systembug.device;
+
+import java.util.Comparator;
+
+/**
+ * Ergebnis von {@link DeviceBenchmark}: die gemessenen Durchsatzwerte eines 
+ * Devices. Abrufbar ueber {@link Device#getPerformance()}.
+ * <p>
+ * Lesewerte gibt es bewusst nicht: Die Testdatei liegt direkt nach dem
+ * Schreiben im Page-Cache, und ohne O_DIRECT bzw. posix_fadvise (aus Java 
+ * nicht erreichbar) laesst er sich nicht umgehen; gemessen wuerde also nur
+ * der Hauptspeicher.
+ * 
+ * @since 1.6
+ */
+public final class DevicePerformance {
+	
+	/** sortiert nach sequentieller Schreibrate, schnellste zuerst */
+	public static final Comparator<DevicePerformance> BY_WRITE_SPEED = new Comparator<DevicePerformance>() {
+		@Override public int compare(DevicePerformance a, DevicePerformance b) {
+			return Double.compare(b.mSeqWrite, a.mSeqWrite);
+		}
+	};
+	
+	final long mTotal;
+	private final double mSeqWrite, mRandomWrite;
+	private final long mFsyncMicros;
+	private final long mTime;
+	
+	DevicePerformance(long total, double seqWrite, double randomWrite, long fsyncMicros, long time) {
+		mTotal = total;
+		mSeqWrite = seqWrite;
+		mRandomWrite = randomWrite;
+		mFsyncMicros = fsyncMicros;
+		mTime = time;
+	}
+	
+	/** @return sequentielles Schreiben in Bytes pro Sekunde (inklusive abschliessendem fsync) */
+	public double getSequentialWrite() { return mSeqWrite; }
+	
+	/** @return zufaelliges Schreiben von 4-KB-Bloecken in Operationen pro Sekunde */
+	public double getRandomWriteIops() { return mRandomWrite; }
+	
+	/** @return die mittlere Dauer eines fsync nach einem kleinen Schreibzugriff in Mikrosekunden */
+	public long getFsyncLatency() { return mFsyncMicros; }
+	
+	/** @return der Zeitpunkt der Messung (System.currentTimeMillis) */
+	public long getTime() { return mTime; }
+
+	@Override
+	public String toString() {
+		return String.format("seq w %.1f MB/s, 4k w %.0f IOPS, fsync %d us", 
+				mSeqWrite/1e6, mRandomWrite, mFsyncMicros);
+	}
+}
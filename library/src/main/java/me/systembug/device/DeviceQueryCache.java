@@ -0,0 +1,70 @@
+package me.systembug.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Merkt sich die Ergebnisse von {@link Environment2#getDeviceList(String, boolean, boolean, boolean)}
+ * fuer jede Kombination der Parameter. Gilt fuer genau einen Snapshot und eine
+ * Generation (siehe {@link Environment2#getGeneration()}); aendert sich eins
+ * davon, legt Environment2 einen neuen Cache an. Ohne key liegen die acht 
+ * moeglichen Ergebnisse in einem Array, mit key in je einer Map pro 
+ * Kombination, so dass ein Treffer keine Objekte erzeugt.
+ */
+final class DeviceQueryCache {
+	final int mGeneration;
+	final DeviceSnapshot mSnapshot;
+	private final Device mInternal;
+	private final AtomicReferenceArray<List<Device>> mNoKey = new AtomicReferenceArray<List<Device>>(8);
+	private final AtomicReferenceArray<ConcurrentHashMap<String, List<Device>>> mByKey = 
+			new AtomicReferenceArray<ConcurrentHashMap<String, List<Device>>>(8);
+	
+	DeviceQueryCache(int generation, DeviceSnapshot s, Device internal) {
+		mGeneration = generation;
+		mSnapshot = s;
+		mInternal = internal;
+	}
+	
+	
+	List<Device> get(String key, boolean available, boolean intern, boolean data) {
+		int slot = (available ? 4 : 0) | (intern ? 2 : 0) | (data ? 1 : 0);
+		if (key==null) {
+			List<Device> l = mNoKey.get(slot);
+			if (l==null) {
+				Metrics.count(Metrics.QUERY_CACHE_MISS);
+				l = query(null, available, intern, data);
+				mNoKey.set(slot, l);
+			} else
+				Metrics.count(Metrics.QUERY_CACHE_HIT);
+			return l;
+		}
+		ConcurrentHashMap<String, List<Device>> map = mByKey.get(slot);
+		if (map==null) {
+			mByKey.compareAndSet(slot, null, new ConcurrentHashMap<String, List<Device>>(4));
+			map = mByKey.get(slot);
+		}
+		List<Device> l = map.get(key);
+		if (l==null) {
+			Metrics.count(Metrics.QUERY_CACHE_MISS);
+			l = query(key.toLowerCase(), available, intern, data);
+			map.put(key, l);
+		} else
+			Metrics.count(Metrics.QUERY_CACHE_HIT);
+		return l;
+	}
+	
+	
+	private List<Device> query(String key, boolean available, boolean intern, boolean data) {
+		ArrayList<Device> temp = new ArrayList<Device>(mSnapshot.mDevices.size()+2);
+		if (data) temp.add(mInternal);
+		if (intern && ( !available || mSnapshot.mPrimary.isAvailable())) temp.add(mSnapshot.mPrimary);
+		for (DeviceDiv d : mSnapshot.mDevices) {
+			if ( ((key==null) || d.getNameLowerCase().contains(key)) && (!available || d.isAvailable()) ) temp.add(d);
+		}
+		temp.trimToSize();
+		return Collections.unmodifiableList(temp);
+	}
+}
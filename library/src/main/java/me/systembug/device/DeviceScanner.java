@@ -0,0 +1,50 @@
+package me.systembug.device;
+
+/**
+ * Schnittstelle fuer die Quellen, aus denen {@link Environment2#rescanDevices()}
+ * die Liste der Devices ermittelt. Mitgeliefert werden {@link VoldScanner}
+ * (/system/etc/vold.fstab bzw. vold.conf, bis Android 4.2) und 
+ * {@link MountInfoScanner} (/proc/self/mountinfo bzw. /proc/mounts, fuer 
+ * neuere Geraete). Eigene Implementierungen lassen sich per 
+ * {@link Environment2#setScanners(DeviceScanner...)} einhaengen.
+ * 
+ * @see Environment2#getDefaultScanners()
+ * @since 1.6
+ */
+public interface DeviceScanner {
+
+	/**
+	 * Nimmt die gefundenen MountPoints entgegen. Wird von Environment2 implementiert,
+	 * das daraus {@link Device}-Objekte macht.
+	 */
+	public interface Sink {
+		/**
+		 * @return der MountPoint des primaeren externen Speichers (meist /mnt/sdcard),
+		 * 		damit der Scanner Duplikate erkennen kann; kann null sein
+		 */
+		String getPrimaryMountPoint();
+		
+		/**
+		 * Erkenntnisse des Scanners ueber den primaeren Speicher, z.B. 
+		 * "nonremovable" in vold.fstab
+		 */
+		boolean isPrimaryRemovable();
+		void setPrimaryRemovable(boolean removable);
+		
+		/**
+		 * Ein weiteres Device (zweite SD, USB-Geraet etc.) wurde gefunden
+		 * @param label eine Bezeichnung aus der Quelle, z.B. das vold-Label oder das Blockdevice
+		 * @param mountPoint der Pfad, unter dem das Device eingehaengt ist
+		 */
+		void addDevice(String label, String mountPoint);
+	}
+	
+	
+	/**
+	 * Liest die Quelle aus und meldet alle gefundenen Devices an sink.
+	 * @return true, wenn die Quelle gelesen werden konnte, auch wenn dabei
+	 * 		kein Device gefunden wurde; false, wenn der naechste Scanner
+	 * 		probiert werden soll
+	 */
+	boolean scan(Sink sink);
+}
@@ -0,0 +1,59 @@
+package me.systembug.device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unveraenderliches Ergebnis eines Scans: die Liste der gefundenen Devices
+ * sowie primaere und sekundaere SD-Karte. {@link Environment2} haelt genau
+ * einen Snapshot in einem volatile-Feld; ein Rescan baut einen neuen auf und
+ * tauscht ihn dann in einem Schritt aus. Leser brauchen also keine Locks 
+ * und bekommen immer zueinander passende Werte, wenn sie sich den Snapshot
+ * einmal holen ({@link Environment2#getSnapshot()}) und dann nur noch mit 
+ * diesem arbeiten.
+ * <p>
+ * Unveraenderlich ist nur die Zusammensetzung; der Zustand der Devices selbst
+ * (verfuegbar, Groesse) wird weiterhin von {@link Environment2#updateDevices()}
+ * aufgefrischt.
+ * 
+ * @since 1.6
+ */
+public final class DeviceSnapshot {
+	final List<DeviceDiv> mDevices;
+	final DeviceExternal mPrimary;
+	final DeviceDiv mSecondary;
+	final boolean mExternalEmulated;
+	final MountPointIndex<Device> mIndex;
+	
+	DeviceSnapshot(ArrayList<DeviceDiv> devices, DeviceExternal primary, DeviceDiv secondary, boolean emulated, Device internal) {
+		mDevices = Collections.unmodifiableList(new ArrayList<DeviceDiv>(devices));
+		mPrimary = primary;
+		mSecondary = secondary;
+		mExternalEmulated = emulated;
+		mIndex = new MountPointIndex<Device>();
+		mIndex.put(internal.getMountPoint(), internal);
+		mIndex.put(primary.getMountPoint(), primary);
+		for (DeviceDiv d : mDevices) mIndex.put(d.getMountPoint(), d);
+	}
+	
+	/** @return die weiteren Devices (zweite SD, USB), ohne primaeren und internen Speicher */
+	public List<? extends Device> getDevices() { return mDevices; }
+	
+	/** @return der primaere externe Speicher, meist /mnt/sdcard */
+	public Device getPrimary() { return mPrimary; }
+	
+	/** @return die zweite SD-Karte oder null, falls keine gefunden */
+	public Device getSecondary() { return mSecondary; }
+	
+	public boolean isSecondaryAvailable() { return mSecondary!=null && mSecondary.isAvailable(); }
+	
+	/** 
+	 * @return das Device, auf dem der Pfad liegt (laengster passender MountPoint) 
+	 * @see MountPointIndex
+	 */
+	public Device deviceForPath(String path) { return mIndex.lookup(path); }
+	
+	/** @see Environment2#isExternalStorageEmulated() */
+	public boolean isExternalEmulated() { return mExternalEmulated; }
+}
@@ -0,0 +1,78 @@
+package me.systembug.device;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Merkt sich den zuletzt gemeldeten Zustand aller Devices (nach MountPoint,
+ * damit ein Rescan mit neuen Device-Objekten keine Scheinaenderungen erzeugt)
+ * und berechnet daraus die {@link DeviceDiff}s. Wird nur von {@link Environment2}
+ * benutzt.
+ */
+class DeviceTracker {
+	
+	private static class State {
+		final Device device;
+		final boolean available, writeable;
+		final Size size;
+		
+		State(Device d, Size reported) {
+			device = d;
+			available = d.isAvailable();
+			writeable = d.isWriteable();
+			size = reported;
+		}
+	}
+	
+	private final HashMap<String, State> mStates = new HashMap<String, State>();
+	
+	
+	/**
+	 * Vergleicht die Devices des Snapshots mit dem letzten Stand und merkt sich
+	 * den neuen. Eine Groessenaenderung unterhalb der Schwelle wird nicht 
+	 * gemeldet und auch nicht als neuer Stand uebernommen, damit sich viele
+	 * kleine Aenderungen irgendwann zu einer Meldung summieren.
+	 */
+	synchronized DeviceDiff update(DeviceSnapshot s, long threshold) {
+		ArrayList<Device> mounted = new ArrayList<Device>(2), unmounted = new ArrayList<Device>(2);
+		ArrayList<Device> writeable = new ArrayList<Device>(2), size = new ArrayList<Device>(2);
+		HashMap<String, State> old = new HashMap<String, State>(mStates);
+		
+		compare(s.mPrimary, old, threshold, mounted, unmounted, writeable, size);
+		for (Device d : s.mDevices) compare(d, old, threshold, mounted, unmounted, writeable, size);
+		
+		// was uebrig ist, gibt es nach einem Rescan nicht mehr
+		for (Iterator<Map.Entry<String, State>> i = old.entrySet().iterator(); i.hasNext(); ) {
+			State st = i.next().getValue();
+			if (st.available) unmounted.add(st.device);
+			mStates.remove(st.device.getMountPoint());
+		}
+		return new DeviceDiff(mounted, unmounted, writeable, size);
+	}
+	
+	
+	private void compare(Device d, HashMap<String, State> old, long threshold, ArrayList<Device> mounted, 
+			ArrayList<Device> unmounted, ArrayList<Device> writeable, ArrayList<Device> size) {
+		State prev = old.remove(d.getMountPoint());
+		Size current = d.mSize;
+		Size reported = current;
+		boolean available = d.isAvailable();
+		
+		if (prev==null || !prev.available) {
+			if (available) mounted.add(d);
+		} else if (!available) {
+			unmounted.add(d);
+		} else {
+			if (prev.writeable!=d.isWriteable()) writeable.add(d);
+			if (prev.size!=null && current!=null 
+					&& Math.abs(prev.size.getStats().getAvailable() - current.getStats().getAvailable())<threshold 
+					&& prev.size.getStats().getTotal()==current.getStats().getTotal())
+				reported = prev.size;
+			else if (prev.size!=current)
+				size.add(d);
+		}
+		mStates.put(d.getMountPoint(), new State(d, reported));
+	}
+}
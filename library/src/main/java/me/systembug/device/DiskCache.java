@@ -0,0 +1,421 @@
+package me.systembug.device;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.Context;
+
+/**
+ * Ein Datei-Cache mit LRU-Verdraengung in einem Unterverzeichnis von
+ * {@link Device#getCacheDir(Context)}. Das Budget haengt am Device: ein Anteil
+ * des Platzes, den der Cache einnehmen koennte (freier Speicher plus das, was
+ * er schon belegt), hoechstens aber maxBytes.
+ * <p>
+ * Welche Dateien es gibt und wie gross sie sind, steht in einem Index im
+ * Speicher und einem kompakten Journal im Cache-Verzeichnis; beim Start wird
+ * nur das Journal gelesen, nicht das Verzeichnis durchlaufen. Verdraengt wird
+ * in einem Hintergrund-Thread, nach jedem {@link #commit(String)} und wenn
+ * sich der freie Speicher des Devices aendert (dazu den Cache per
+ * {@link Environment2#addDeviceListener(DeviceDiff.Listener)} anmelden).
+ * <pre>
+ * File tmp = cache.getTempFile(key);
+ * ... tmp schreiben ...
+ * File f = cache.commit(key);
+ * </pre>
+ *
+ * @since 1.6
+ */
+public class DiskCache implements DeviceDiff.Listener {
+	private static final String JOURNAL = ".journal";
+	private static final String TMP = ".tmp";
+	/** hierher werden verdraengte Dateien umbenannt und dann ausserhalb des Locks geloescht */
+	private static final String TRASH = ".trash";
+	private static final int MAGIC = 0x45324443; // "E2DC"
+	private static final int VERSION = 1;
+	private static final byte OP_PUT = 1, OP_READ = 2, OP_REMOVE = 3;
+	/** ab so vielen ueberzaehligen Journal-Eintraegen wird es neu geschrieben */
+	private static final int COMPACT_SLACK = 2000;
+
+	private final Device mDevice;
+	private final File mDir;
+	private final File mJournalFile;
+	private final File mTrash;
+	private int mTrashCount = 0;
+	private final float mFraction;
+	private final long mMaxBytes;
+	private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(64, 0.75f, true);
+	private long mSize = 0;
+	private int mJournalOps = 0;
+	private DataOutputStream mJournal;
+	private final ExecutorService mExecutor;
+	private final AtomicBoolean mTrimPending = new AtomicBoolean();
+
+	/**
+	 * Oeffnet den Cache bzw. legt ihn an.
+	 * @param ctx der Context der App
+	 * @param d das Device, auf dem der Cache liegt
+	 * @param name der Name des Unterverzeichnisses in d.getCacheDir()
+	 * @param fraction welcher Anteil von freiem Speicher plus Cache-Groesse
+	 * 		belegt werden darf, z.B. 0.1f
+	 * @param maxBytes die Obergrenze in Bytes, unabhaengig vom freien Speicher
+	 * @throws IOException wenn das Verzeichnis nicht angelegt werden kann
+	 */
+	public DiskCache(Context ctx, Device d, String name, float fraction, long maxBytes) throws IOException {
+		if (d==null) throw new IllegalArgumentException("d darf nicht null sein");
+		if (fraction<=0 || fraction>1) throw new IllegalArgumentException("fraction muss zwischen 0 und 1 liegen");
+		File base = d.getCacheDir(ctx);
+		if (base==null) throw new IOException("kein Cache-Verzeichnis auf "+d.getMountPoint());
+		mDevice = d;
+		mDir = new File(base, name);
+		if (!mDir.isDirectory() && !mDir.mkdirs()) throw new IOException("kann "+mDir+" nicht anlegen");
+		mJournalFile = new File(mDir, JOURNAL);
+		mTrash = new File(mDir, TRASH);
+		mFraction = fraction;
+		mMaxBytes = maxBytes;
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "DiskCache-"+mDir.getName());
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+		synchronized (this) {
+			if (!readJournal()) scanDir();
+			rewriteJournal();
+		}
+		emptyTrash();
+		scheduleTrim();
+	}
+
+
+	public File getDirectory() { return mDir; }
+	public Device getDevice() { return mDevice; }
+	public synchronized long getSize() { return mSize; }
+	public synchronized int getCount() { return mEntries.size(); }
+
+
+	/**
+	 * @return das aktuelle Budget in Bytes, berechnet aus dem (zwischengespeicherten)
+	 * 		freien Speicher des Devices
+	 */
+	public long getBudget() {
+		Size s = mDevice.getSize();
+		long free = s==null ? 0 : s.getStats().getAvailable();
+		long size;
+		synchronized (this) { size = mSize; }
+		return Math.min(mMaxBytes, (long)((free + size) * mFraction));
+	}
+
+
+	/**
+	 * @return die Datei zum Schluessel oder null; ein Treffer zaehlt als Zugriff
+	 */
+	public synchronized File get(String key) {
+		checkKey(key);
+		// get statt containsKey: nur get verschiebt den Eintrag in der access-order ans Ende
+		if (mEntries.get(key)==null) return null;
+		File f = new File(mDir, key);
+		if (!f.isFile()) {
+			// von aussen geloescht
+			removeEntry(key);
+			return null;
+		}
+		journal(OP_READ, key, 0, false);
+		return f;
+	}
+
+
+	/**
+	 * @return die Datei, in die der Eintrag geschrieben werden soll; danach
+	 * 		{@link #commit(String)} aufrufen
+	 */
+	public File getTempFile(String key) {
+		checkKey(key);
+		return new File(mDir, key+TMP);
+	}
+
+
+	/**
+	 * Uebernimmt die per {@link #getTempFile(String)} geschriebene Datei in den
+	 * Cache; ein vorhandener Eintrag wird ersetzt.
+	 * @return die Datei im Cache
+	 * @throws IOException wenn die temporaere Datei fehlt oder nicht umbenannt werden kann
+	 */
+	public File commit(String key) throws IOException {
+		File tmp = getTempFile(key);
+		File f = new File(mDir, key);
+		synchronized (this) {
+			if (!tmp.isFile()) throw new IOException(tmp+" fehlt");
+			if (f.exists()) f.delete();
+			if (!tmp.renameTo(f)) throw new IOException("kann "+tmp+" nicht umbenennen");
+			long length = f.length();
+			Long old = mEntries.put(key, length);
+			mSize += length - (old==null ? 0 : old);
+			journal(OP_PUT, key, length, true);
+		}
+		SpaceCache.invalidate(mDevice);
+		scheduleTrim();
+		return f;
+	}
+
+
+	public synchronized void remove(String key) {
+		checkKey(key);
+		if (!mEntries.containsKey(key)) return;
+		new File(mDir, key).delete();
+		removeEntry(key);
+	}
+
+
+	/**
+	 * Prueft das Budget neu, wenn sich der freie Speicher des Devices geaendert hat
+	 */
+	@Override
+	public void onDevicesChanged(DeviceDiff diff) {
+		// nach einem Rescan gibt es neue Device-Objekte, daher der Vergleich per MountPoint
+		for (Device d : diff.getSizeChanged()) {
+			if (d.getMountPoint().equals(mDevice.getMountPoint())) {
+				scheduleTrim();
+				return;
+			}
+		}
+	}
+
+
+	/**
+	 * Verdraengt im Hintergrund die am laengsten nicht benutzten Eintraege,
+	 * bis der Cache ins Budget passt
+	 */
+	public void scheduleTrim() {
+		if (!mTrimPending.compareAndSet(false, true)) return;
+		try {
+			mExecutor.execute(new Runnable() {
+				@Override public void run() {
+					mTrimPending.set(false);
+					trim();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// schon geschlossen
+			mTrimPending.set(false);
+		}
+	}
+
+
+	/**
+	 * Verdraengt sofort im aufrufenden Thread, bis der Cache ins Budget passt.
+	 * Unter dem Lock werden die Dateien nur umbenannt; das eigentliche Loeschen
+	 * (auf FAT teuer fuer grosse Dateien) blockiert {@link #get(String)} nicht.
+	 */
+	public void trim() {
+		long budget = getBudget();
+		boolean removed = false;
+		synchronized (this) {
+			Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+			while (mSize>budget && it.hasNext()) {
+				Map.Entry<String, Long> e = it.next();
+				File f = new File(mDir, e.getKey());
+				if (!mTrash.isDirectory()) mTrash.mkdir();
+				if (!f.renameTo(new File(mTrash, (mTrashCount++)+"-"+e.getKey()))) f.delete();
+				mSize -= e.getValue();
+				it.remove();
+				journal(OP_REMOVE, e.getKey(), 0, false);
+				removed = true;
+			}
+			if (removed) flushJournal();
+		}
+		if (removed) {
+			emptyTrash();
+			SpaceCache.invalidate(mDevice);
+		}
+	}
+
+
+	/** loescht die verdraengten Dateien; auch Reste eines abgebrochenen Laufs */
+	private void emptyTrash() {
+		File[] list = mTrash.listFiles();
+		if (list==null) return;
+		for (File f : list) f.delete();
+	}
+
+
+	/**
+	 * Schreibt das Journal weg und beendet den Hintergrund-Thread
+	 */
+	public synchronized void close() {
+		mExecutor.shutdown();
+		if (mJournal!=null) {
+			try { mJournal.close(); } catch (IOException e) { }
+			mJournal = null;
+		}
+	}
+
+
+	private void removeEntry(String key) {
+		Long old = mEntries.remove(key);
+		if (old!=null) mSize -= old;
+		journal(OP_REMOVE, key, 0, true);
+	}
+
+
+	private static void checkKey(String key) {
+		if (key==null || key.length()==0 || key.length()>120)
+			throw new IllegalArgumentException("ungueltiger Schluessel: "+key);
+		for (int i=0; i<key.length(); i++) {
+			char c = key.charAt(i);
+			if (!(c>='a' && c<='z' || c>='A' && c<='Z' || c>='0' && c<='9' || c=='-' || c=='_' || c=='.'))
+				throw new IllegalArgumentException("ungueltiger Schluessel: "+key);
+		}
+		if (key.charAt(0)=='.') throw new IllegalArgumentException("ungueltiger Schluessel: "+key);
+	}
+
+
+	// Journal ---------------------------------------------------------------------------------------
+
+	private void journal(byte op, String key, long length, boolean flush) {
+		if (mJournal==null) return;
+		try {
+			mJournal.writeByte(op);
+			mJournal.writeUTF(key);
+			if (op==OP_PUT) mJournal.writeLong(length);
+			if (flush) mJournal.flush();
+		} catch (IOException e) {
+			// Journal kaputt: beim naechsten Start wird das Verzeichnis durchsucht
+			mJournal = null;
+			mJournalFile.delete();
+			return;
+		}
+		if (++mJournalOps > mEntries.size() + COMPACT_SLACK) rewriteJournal();
+	}
+
+
+	private void flushJournal() {
+		if (mJournal!=null) try {
+			mJournal.flush();
+		} catch (IOException e) {
+			mJournal = null;
+			mJournalFile.delete();
+		}
+	}
+
+
+	/** @return false, wenn es kein brauchbares Journal gibt */
+	private boolean readJournal() {
+		if (!mJournalFile.isFile()) return false;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile), 16384));
+			try {
+				if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return false;
+				while (true) {
+					byte op;
+					try {
+						op = in.readByte();
+					} catch (EOFException e) {
+						break;
+					}
+					String key = in.readUTF();
+					if (op==OP_PUT) {
+						long length = in.readLong();
+						Long old = mEntries.put(key, length);
+						mSize += length - (old==null ? 0 : old);
+					} else if (op==OP_READ) {
+						mEntries.get(key);
+					} else if (op==OP_REMOVE) {
+						Long old = mEntries.remove(key);
+						if (old!=null) mSize -= old;
+					} else
+						break;
+				}
+			} finally {
+				in.close();
+			}
+		} catch (EOFException e) {
+			// abgeschnittener letzter Eintrag nach Absturz; der Rest gilt
+		} catch (IOException e) {
+			mEntries.clear();
+			mSize = 0;
+			return false;
+		}
+		return true;
+	}
+
+
+	/** baut den Index aus dem Verzeichnis auf, aelteste Dateien zuerst */
+	private void scanDir() {
+		mEntries.clear();
+		mSize = 0;
+		File[] list = mDir.listFiles();
+		if (list==null) return;
+		ArrayList<File> files = new ArrayList<File>(list.length);
+		for (File f : list) {
+			String n = f.getName();
+			if (!f.isFile() || n.startsWith(".")) continue;
+			if (n.endsWith(TMP)) f.delete();
+			else files.add(f);
+		}
+		final long[] mtimes = new long[files.size()];
+		Integer[] idx = new Integer[files.size()];
+		for (int i=0; i<idx.length; i++) {
+			idx[i] = i;
+			mtimes[i] = files.get(i).lastModified();
+		}
+		Arrays.sort(idx, new Comparator<Integer>() {
+			@Override public int compare(Integer a, Integer b) {
+				return mtimes[a]<mtimes[b] ? -1 : mtimes[a]==mtimes[b] ? 0 : 1;
+			}
+		});
+		for (Integer i : idx) {
+			File f = files.get(i);
+			long length = f.length();
+			mEntries.put(f.getName(), length);
+			mSize += length;
+		}
+	}
+
+
+	/** schreibt das Journal in LRU-Reihenfolge neu, nur mit PUT-Eintraegen */
+	private void rewriteJournal() {
+		if (mJournal!=null) try { mJournal.close(); } catch (IOException e) { }
+		mJournal = null;
+		File tmp = new File(mDir, JOURNAL+TMP);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 16384));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				for (Map.Entry<String, Long> e : mEntries.entrySet()) {
+					out.writeByte(OP_PUT);
+					out.writeUTF(e.getKey());
+					out.writeLong(e.getValue());
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(mJournalFile)) throw new IOException("kann "+mJournalFile+" nicht schreiben");
+			mJournal = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mJournalFile, true), 4096));
+			mJournalOps = mEntries.size();
+		} catch (IOException e) {
+			tmp.delete();
+			mJournal = null;
+		}
+	}
+}
@@ -1,9 +1,15 @@
 package me.systembug.device;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import android.annotation.SuppressLint;
 import android.content.BroadcastReceiver;
@@ -12,8 +18,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Environment;
-import android.text.TextUtils;
-import android.text.TextUtils.SimpleStringSplitter;
 import android.util.Log;
 import me.systembug.device.pref.DevicesListPreference;
 
@@ -133,6 +137,10 @@ import me.systembug.device.pref.DevicesListPreference;
  * Linux-D?mons, der genau f?r das Einbinden dieser Ger?te zust?ndig ist. 
  * Es mag Custom-ROMs geben, wo diese Methode nicht funktioniert.
  * <p>
+ * Ab Android 4.3 gibt es diese Datei nicht mehr; dann wird die Mount-Tabelle
+ * des Kernels (/proc/self/mountinfo) ausgewertet, siehe {@link MountInfoScanner}.
+ * Weitere Quellen lassen sich per {@link #setScanners(DeviceScanner...)} einhaengen.
+ * <p>
  * Der MountPoint f?r die zweite SD-Karte stand bei allen bisher getesteten 
  * Ger?ten direkt an erster Stelle dieser Datei, bei einigen nach /mnt/sdcard 
  * an zweiter Stelle. 
@@ -172,17 +180,209 @@ import me.systembug.device.pref.DevicesListPreference;
 
 public class Environment2  {
 	private static final String TAG = "Environment2";
-	private static final boolean DEBUG = true;
+	// per "adb shell setprop log.tag.Environment2 DEBUG" einschalten, vor dem Start der App
+	private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
 	
-	private static ArrayList<DeviceDiv> mDeviceList = null;
-	private static boolean mExternalEmulated = false;
-	private static Device mInternal = null;
-	protected static DeviceExternal mPrimary = null;
-	private static DeviceDiv mSecondary = null;
+	private static volatile DeviceSnapshot mSnapshot = null;
+	private static volatile Device mInternal = null;
+	private static FutureTask<Void> mScanTask = null;
+	private static DeviceScanner[] mScanners = getDefaultScanners();
+	private static final DeviceTracker mTracker = new DeviceTracker();
+	private static final CopyOnWriteArrayList<DeviceDiff.Listener> mListeners = new CopyOnWriteArrayList<DeviceDiff.Listener>();
+	private static volatile long mSizeChangeThreshold = 16*1024*1024;
+	private static final AtomicInteger mGeneration = new AtomicInteger();
+	private static volatile DeviceQueryCache mQueries = null;
+	private static final AtomicReference<CardRoute> mCard = new AtomicReference<CardRoute>();
+	private static volatile File mSnapshotFile = null;
 
 	public final static String PATH_PREFIX = "/Android/data/";
+
+	/**
+	 * System-Property, mit der sich der Scan im static-initializer abschalten
+	 * laesst. Muss gesetzt werden, bevor Environment2 zum ersten Mal angefasst
+	 * wird (z.B. ganz am Anfang von Application.onCreate()):
+	 * {@code System.setProperty(Environment2.PROPERTY_LAZY_SCAN, "true");}
+	 * Danach kann man per {@link #prepareAsync(Runnable)} im Hintergrund scannen;
+	 * alle anderen Methoden warten bei Bedarf auf das Ergebnis bzw. scannen selbst.
+	 * @since 1.6
+	 */
+	public final static String PROPERTY_LAZY_SCAN = "me.systembug.device.lazyScan";
+
 	static {
-		rescanDevices();
+		if (!Boolean.getBoolean(PROPERTY_LAZY_SCAN)) rescanDevices();
+	}
+
+
+	/**
+	 * Startet den Scan der Devices in einem Hintergrund-Thread, statt ihn wie
+	 * {@link #rescanDevices()} im aufrufenden Thread (meist dem Main-Thread)
+	 * durchzufuehren. Sinnvoll zusammen mit {@link #PROPERTY_LAZY_SCAN}, damit
+	 * der Start der App nicht durch das Lesen von vold.fstab und die statfs-Aufrufe
+	 * gebremst wird.
+	 * <p>
+	 * Wurde schon gescannt, passiert nichts weiter; der Callback wird dann sofort
+	 * im aufrufenden Thread ausgefuehrt (ohne dabei einen Lock von Environment2
+	 * zu halten). Ist ein frueherer Scan mit einer Exception abgebrochen, wird 
+	 * neu gescannt, auch fuer einen Callback, der an diesen Scan angehaengt war. Die Getter dieser Klasse warten
+	 * von selbst, bis der Scan fertig ist, falls sie vorher aufgerufen werden.
+	 * 
+	 * @param callback ein Runnable, das nach dem Scan (im Scan-Thread!) aufgerufen
+	 * 		wird, bzw. sofort, falls schon gescannt war; kann auch null sein
+	 * @return ein Future, mit dem man auf das Ende des Scans warten kann
+	 * @since 1.6
+	 */
+	public static Future<Void> prepareAsync(final Runnable callback) {
+		FutureTask<Void> task;
+		synchronized (Environment2.class) {
+			boolean scanned = mSnapshot!=null;
+			// fertig heisst ohne Snapshot: der Scan ist fehlgeschlagen, also neu starten
+			if (mScanTask==null || mScanTask.isDone()) {
+				task = mScanTask = new FutureTask<Void>(new Callable<Void>() {
+					@Override public Void call() {
+						ensureScanned();
+						if (callback!=null) callback.run();
+						return null;
+					}
+				});
+				if (!scanned) {
+					startScanThread(task);
+					return task;
+				}
+			} else {
+				if (callback==null) return mScanTask;
+				// laeuft schon; Callback hinten anhaengen
+				final Future<Void> running = mScanTask;
+				task = mScanTask = new FutureTask<Void>(new Callable<Void>() {
+					@Override public Void call() {
+						try {
+							running.get();
+						} catch (ExecutionException e) {
+							// der Scan ist fehlgeschlagen: neu scannen, wirft ggf. wieder
+							ensureScanned();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							ensureScanned();
+						}
+						callback.run();
+						return null;
+					}
+				});
+				startScanThread(task);
+				return task;
+			}
+		}
+		// schon gescannt: der Callback laeuft hier, aber ausserhalb des Locks
+		task.run();
+		return task;
+	}
+
+
+	private static void startScanThread(Runnable task) {
+		Thread t = new Thread(task, TAG+"-scan");
+		t.setDaemon(true);
+		t.start();
+	}
+
+
+	/**
+	 * Liefert, ob die Liste der Devices schon ermittelt wurde, ob also die
+	 * Getter ohne Warten antworten.
+	 * @since 1.6
+	 */
+	public static boolean isPrepared() {
+		return mSnapshot!=null;
+	}
+
+
+	/**
+	 * Liefert das Ergebnis des letzten Scans als Ganzes. Wer mehrere Werte
+	 * braucht (z.B. primaere und sekundaere SD), sollte sie aus einem Snapshot
+	 * lesen, damit ein zwischenzeitlicher Rescan nicht dazwischenfunkt.
+	 * @return der aktuelle {@link DeviceSnapshot}; wartet ggf. auf den ersten Scan
+	 * @since 1.6
+	 */
+	public static DeviceSnapshot getSnapshot() {
+		return snapshot();
+	}
+
+
+	/**
+	 * Wartet auf einen laufenden Scan oder fuehrt ihn im aufrufenden Thread
+	 * durch, falls noch keiner stattgefunden hat. Wird von allen Gettern aufgerufen
+	 * und kostet nach dem ersten Scan nur das Lesen eines volatile-Felds.
+	 */
+	private static DeviceSnapshot snapshot() {
+		DeviceSnapshot s = mSnapshot;
+		return s!=null ? s : ensureScanned();
+	}
+
+
+	/**
+	 * Laedt den beim letzten Lauf gespeicherten Scan aus dem internen Speicher
+	 * der App, statt beim Start neu zu scannen. Die Getter liefern sofort die
+	 * gespeicherten Werte; in einem Hintergrund-Thread wird nur geprueft, ob
+	 * seitdem etwas ein- oder ausgehaengt wurde (per /proc/self/mounts), und
+	 * nur dann neu gescannt. Nach einem Neustart des Geraets oder ohne
+	 * gespeicherten Stand wird stattdessen {@link #prepareAsync(Runnable)}
+	 * gestartet. Ab diesem Aufruf wird der Stand nach jedem Rescan und Update
+	 * in einem Hintergrund-Thread gespeichert.
+	 * <p>
+	 * Muss zusammen mit {@link #PROPERTY_LAZY_SCAN} benutzt werden, am besten
+	 * ganz am Anfang von Application.onCreate():
+	 * <pre>
+	 * System.setProperty(Environment2.PROPERTY_LAZY_SCAN, "true");
+	 * Environment2.restoreSnapshot(this);
+	 * </pre>
+	 * 
+	 * @param ctx der Context der App, fuer {@link Context#getFilesDir()}
+	 * @return true, wenn der gespeicherte Stand benutzt wird; false, wenn 
+	 * 		gescannt wird (oder schon gescannt war)
+	 * @since 1.6
+	 */
+	public static boolean restoreSnapshot(Context ctx) {
+		File f = new File(ctx.getFilesDir(), ".e2snapshot");
+		final SnapshotStore.Stored stored;
+		synchronized (Environment2.class) {
+			mSnapshotFile = f;
+			if (mSnapshot!=null) {
+				SnapshotStore.saveAsync(f, mSnapshot);
+				return false;
+			}
+			stored = SnapshotStore.load(f, getInternalStorage());
+			if (stored!=null) {
+				mSnapshot = stored.mSnapshot;
+				changed();
+				dispatchDiff(stored.mSnapshot);
+			}
+		}
+		if (stored==null) {
+			prepareAsync(null);
+			return false;
+		}
+		Thread t = new Thread(new Runnable() {
+			@Override public void run() {
+				long h = SnapshotStore.hashMounts();
+				if (h==0 || h!=stored.mMountsHash) {
+					if (DEBUG) Log.d(TAG, "gespeicherter Scan veraltet, scanne neu");
+					rescanDevices();
+				}
+			}
+		}, TAG+"-verify");
+		t.setDaemon(true);
+		t.start();
+		return true;
+	}
+
+
+	private static void saveSnapshot(DeviceSnapshot s) {
+		File f = mSnapshotFile;
+		if (f!=null) SnapshotStore.saveAsync(f, s);
+	}
+
+
+	private static synchronized DeviceSnapshot ensureScanned() {
+		if (mSnapshot==null) rescanDevices();
+		return mSnapshot;
 	}
 
 
@@ -193,7 +393,7 @@ public class Environment2  {
 	 *			false if not inserted or no slot present
 	 */
 	public static boolean isSecondaryExternalStorageAvailable() {
-		return mSecondary!=null && mSecondary.isAvailable();
+		return snapshot().isSecondaryAvailable();
 	}
 
 	
@@ -205,7 +405,8 @@ public class Environment2  {
 	 * @see #isSecondaryExternalStorageAvailable()
 	 */
 	public final static boolean isSecondaryExternalStorageRemovable() throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
 		return true;
 	}
 	
@@ -217,8 +418,9 @@ public class Environment2  {
 	 * @see #isSecondaryExternalStorageAvailable()
 	 */
 	public static File getSecondaryExternalStorageDirectory() throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
-		return mSecondary.getFile(); 
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
+		return secondary.getFile(); 
 	}
 
 	
@@ -234,8 +436,9 @@ public class Environment2  {
 	 * @see #isSecondaryExternalStorageAvailable()
 	 */
 	public static String getSecondaryExternalStorageState() throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
-		return mSecondary.getState();
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
+		return secondary.getState();
 	}
 
 	
@@ -249,9 +452,10 @@ public class Environment2  {
 	 * @throws NoSecondaryStorageException falls keine Zweit-SD vorhanden
 	 */
 	public static File getSecondaryExternalStoragePublicDirectory(String s) throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
 		if (s==null) throw new IllegalArgumentException("s darf nicht null sein");
-		return mSecondary.getPublicDirectory(s);
+		return secondary.getPublicDirectory(s);
 	}
 	
 	
@@ -267,16 +471,18 @@ public class Environment2  {
 	 * @throws NoSecondaryStorageException falls keine Zwei-SD vorhanden
 	 */
 	public static File getSecondaryExternalFilesDir(Context context, String s) throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
 		if (context==null) throw new IllegalArgumentException("context darf nicht null sein");
-		return mSecondary.getFilesDir(context, s);
+		return secondary.getFilesDir(context, s);
 	}
 	
 	
 	public static File getSecondaryExternalCacheDir(Context context) throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
 		if (context==null) throw new IllegalArgumentException("context darf nicht null sein");
-		return mSecondary.getCacheDir(context);
+		return secondary.getCacheDir(context);
 	}
 	
 
@@ -286,43 +492,55 @@ public class Environment2  {
 	 * {@link #getCardCacheDir(Context)}, {@link #getCardFilesDir(Context, String)}.
 */
 	public static File getCardDirectory() {
-		if (isSecondaryExternalStorageAvailable())
-			try {return getSecondaryExternalStorageDirectory();} 
-			catch (NoSecondaryStorageException e) {throw new RuntimeException("NoSecondaryException trotz Available"); }
-		else
-			return Environment.getExternalStorageDirectory();
+		return card().mDirectory;
 	}
 
 	public static File getCardPublicDirectory(String dir) {
-		if (isSecondaryExternalStorageAvailable())
-			try {return getSecondaryExternalStoragePublicDirectory(dir);} 
-			catch (NoSecondaryStorageException e) {throw new RuntimeException("NoSecondaryException trotz Available"); }
-		else
-			return mPrimary.getPublicDirectory(dir);
+		return card().getPublicDirectory(dir);
 	}
 
 	public static String getCardState() {
-		if (isSecondaryExternalStorageAvailable())
-			try {return getSecondaryExternalStorageState();} 
-			catch (NoSecondaryStorageException e) {throw new RuntimeException("NoSecondaryException trotz Available"); }
-		else
-			return Environment.getExternalStorageState();
+		CardRoute r = card();
+		// der primaere Speicher kann sich ohne Broadcast-Receiver aendern, daher live
+		return r.mSecondary ? r.mState : Environment.getExternalStorageState();
 	}
 
 	public static File getCardCacheDir(Context ctx) {
-		if (isSecondaryExternalStorageAvailable())
-			try {return getSecondaryExternalCacheDir(ctx);} 
-			catch (NoSecondaryStorageException e) {throw new RuntimeException("NoSecondaryException trotz Available"); }
-		else
-			return mPrimary.getCacheDir(ctx);
+		CardRoute r = card();
+		if (r.mSecondary && ctx==null) throw new IllegalArgumentException("context darf nicht null sein");
+		return r.mDevice.getCacheDir(ctx);
 	}
 
 	public static File getCardFilesDir(Context ctx, String dir) {
-		if (isSecondaryExternalStorageAvailable())
-			try {return getSecondaryExternalFilesDir(ctx, dir);} 
-			catch (NoSecondaryStorageException e) {throw new RuntimeException("NoSecondaryException trotz Available"); }
-		else
-			return mPrimary.getFilesDir(ctx, dir);
+		CardRoute r = card();
+		if (r.mSecondary && ctx==null) throw new IllegalArgumentException("context darf nicht null sein");
+		return r.mDevice.getFilesDir(ctx, dir);
+	}
+
+
+	/**
+	 * Liefert das Ziel der getCard*-Methoden; wird nach jedem Update bzw.
+	 * Rescan einmal neu bestimmt, danach kostet der Aufruf nur das Lesen 
+	 * eines volatile-Felds.
+	 */
+	private static CardRoute card() {
+		CardRoute r = mCard.get();
+		if (r!=null) return r;
+		DeviceSnapshot s = snapshot();
+		int generation = mGeneration.get();
+		r = new CardRoute(generation, s);
+		// changed() zaehlt erst hoch und loescht dann; wer nach dem Setzen eine 
+		// neue Generation sieht, nimmt die eigene Route wieder zurueck
+		if (mCard.compareAndSet(null, r) && (mGeneration.get()!=generation || mSnapshot!=s)) 
+			mCard.compareAndSet(r, null);
+		return r;
+	}
+
+
+	/** nach jeder Aenderung an Devices: Generation hochzaehlen, Card-Route verwerfen */
+	private static void changed() {
+		mGeneration.incrementAndGet();
+		mCard.set(null);
 	}
 
 
@@ -341,7 +559,7 @@ public class Environment2  {
 	 * @see #isExternalStorageRemovable()
 	 */
 	public static boolean isExternalStorageEmulated() {
-		return mExternalEmulated; 
+		return snapshot().mExternalEmulated; 
 	}
 
 	
@@ -366,7 +584,7 @@ public class Environment2  {
 	 * @see #isExternalStorageEmulated()
 	 */
 	public static boolean isExternalStorageRemovable() { 
-		return mPrimary.isRemovable();
+		return snapshot().mPrimary.isRemovable();
 	}
 
 	
@@ -382,12 +600,14 @@ public class Environment2  {
 	 * @see IntentFilter
 	 */
 	public static IntentFilter getRescanIntentFilter() {
-		if (mDeviceList==null) rescanDevices();
+		snapshot();
 		IntentFilter filter = new IntentFilter();
 		filter.addAction(Intent.ACTION_MEDIA_BAD_REMOVAL); // rausgenommen
+		filter.addAction(Intent.ACTION_MEDIA_EJECT); // soll ausgeworfen werden, siehe OpenFiles
 		filter.addAction(Intent.ACTION_MEDIA_MOUNTED); // wieder eingesetzt
 		filter.addAction(Intent.ACTION_MEDIA_REMOVED); // entnommen
 		filter.addAction(Intent.ACTION_MEDIA_SHARED); // per USB am PC
+		filter.addAction(Intent.ACTION_MEDIA_UNMOUNTED); // ausgehaengt, aber noch eingesteckt
 		// geht ohne folgendes nicht, obwohl das in der Doku nicht so recht steht
 		filter.addDataScheme("file"); 
 
@@ -417,11 +637,16 @@ public class Environment2  {
 	 * <p>
 	 * und sp?ter (z.B. in onDestroy() ): {@code unregisterReceiver(mRescanReceiver);}
 	 * <p>
-	 * Der hier implementierte Receiver macht nichts anderes als {@link #rescanDevices() }
-	 * und dann den Runnable aufzurufen.
+	 * Der hier implementierte Receiver macht nichts anderes als {@link #updateDevices() }
+	 * und dann den Runnable aufzurufen, beides sofort im Main-Thread. Wer
+	 * kurz aufeinander folgende Broadcasts zu einem Update im Hintergrund
+	 * zusammenfassen will, nimmt {@link #registerRescanBroadcastReceiver(Context, Runnable, long)}
+	 * mit {@link RescanScheduler#DEFAULT_WINDOW}.
 	 * <p>
-	 * TODO Problematisch ist, dass bei MEDIA_BAD_REMOVAL die Daten des f?lschlich
-	 * 	entnommenen Sticks noch vorhanden sind.
+	 * Bei MEDIA_EJECT und MEDIA_BAD_REMOVAL werden ausserdem die per 
+	 * {@link OpenFiles} geoeffneten Streams und Channels auf dem Device 
+	 * geleert und geschlossen, damit das Aushaengen nicht auf sie warten muss
+	 * und keine gepufferten Daten verloren gehen (seit 1.6).
 	 * 
 	 * @param context der Context, in dem registerReceiver aufgerufen wird
 	 * @param r der Runnable, der bei jedem An- und Abmelden von Devices 
@@ -433,14 +658,29 @@ public class Environment2  {
 	 * @see BroadcastReceiver
 	 */
 	public static BroadcastReceiver registerRescanBroadcastReceiver(Context context, final Runnable r) {
-		if (mDeviceList==null) rescanDevices();
-		BroadcastReceiver br = new BroadcastReceiver() {
-			@Override public void onReceive(Context context, Intent intent) {
-				if (DEBUG) Log.i(TAG, "Storage: "+intent.getAction()+"-"+intent.getData());
-				updateDevices();
-				if (r!=null) r.run();
-			}
-		};
+		return registerRescanBroadcastReceiver(context, r, 0);
+	}
+
+	
+	/**
+	 * Wie {@link #registerRescanBroadcastReceiver(Context, Runnable)}, nur mit
+	 * einstellbarem Zeitfenster fuer das Zusammenfassen der Broadcasts.
+	 * 
+	 * @param context der Context, in dem registerReceiver aufgerufen wird
+	 * @param r der Runnable, der nach dem Update im Main-Thread ausgefuehrt 
+	 * 		wird; kann auch null sein
+	 * @param window das Zeitfenster in Millisekunden (siehe {@link RescanScheduler}); 
+	 * 		bei 0 wird wie vor Version 1.6 bei jedem Broadcast sofort im Main-Thread 
+	 * 		aktualisiert und der Runnable aufgerufen
+	 * @return der Receiver, der spaeter unregisterReceiver uebergeben werden 
+	 * 		muss; dabei auch {@link RescanReceiver#cancel()} aufrufen, damit ein
+	 * 		noch ausstehendes Update den Runnable nicht mehr aufruft
+	 * @since 1.6
+	 */
+	public static RescanReceiver registerRescanBroadcastReceiver(Context context, Runnable r, long window) {
+		if (window<0) throw new IllegalArgumentException("window darf nicht negativ sein");
+		snapshot();
+		RescanReceiver br = new RescanReceiver(r, window);
 		context.registerReceiver(br, getRescanIntentFilter());
 		return br;
 	}
@@ -458,10 +698,11 @@ public class Environment2  {
 	 * @since 1.4
 	 */
 	public static BroadcastReceiver registerRescanBroadcastReceiver(Context context, final BroadcastReceiver r) {
-		if (mDeviceList==null) rescanDevices();
+		snapshot();
 		BroadcastReceiver br = new BroadcastReceiver() {
 			@Override public void onReceive(Context context, Intent intent) {
 				if (DEBUG) Log.i(TAG, "Storage: "+intent.getAction()+"-"+intent.getData());
+				OpenFiles.onMediaIntent(intent);
 				updateDevices();
 				if (r!=null) r.onReceive(context, intent);
 			}
@@ -482,8 +723,103 @@ public class Environment2  {
 	 * @since 1.3
 	 */
 	public static void updateDevices() {
-		for (Device i : mDeviceList) {i.updateState();}
-		mPrimary.updateState();
+		DeviceSnapshot s = snapshot();
+		long t = Metrics.begin("Environment2.updateDevices");
+		try {
+			SpaceCache.invalidateAll();
+			// erst primary, weil DeviceDiv.updateState() dessen Groesse vergleicht
+			s.mPrimary.updateState();
+			for (Device i : s.mDevices) {i.updateState();}
+			changed();
+		} finally {
+			Metrics.end(Metrics.UPDATE, t);
+		}
+		dispatchDiff(s);
+		saveSnapshot(s);
+	}
+
+
+	/**
+	 * Wie {@link #updateDevices()}, prueft aber nur das Device mit genau diesem
+	 * MountPoint. Wird von {@link MountWatcher} benutzt, wenn bekannt ist, wo
+	 * sich etwas geaendert hat.
+	 * 
+	 * @param mountPoint der MountPoint des Devices
+	 * @return false, wenn es kein Device mit diesem MountPoint gibt; dann muss
+	 * 		ggf. per {@link #rescanDevices()} neu gesucht werden
+	 * @since 1.6
+	 */
+	public static boolean updateDevice(String mountPoint) {
+		DeviceSnapshot s = snapshot();
+		Device d = s.mIndex.lookup(mountPoint);
+		if (d==null || !d.getMountPoint().equals(mountPoint) || d==getInternalStorage()) return false;
+		long t = Metrics.begin("Environment2.updateDevice");
+		try {
+			SpaceCache.invalidate(mountPoint);
+			d.updateState();
+			changed();
+		} finally {
+			Metrics.end(Metrics.UPDATE, t);
+		}
+		dispatchDiff(s);
+		saveSnapshot(s);
+		return true;
+	}
+
+
+	/**
+	 * Ein Zaehler, der bei jedem {@link #rescanDevices()} und {@link #updateDevices()}
+	 * hochgezaehlt wird. Wer Ergebnisse dieser Klasse zwischenspeichert, kann 
+	 * daran erkennen, ob sie noch gueltig sind.
+	 * @since 1.6
+	 */
+	public static int getGeneration() {
+		return mGeneration.get();
+	}
+
+
+	/**
+	 * Meldet Listener an, die nach jedem Update bzw. Rescan mitgeteilt bekommen,
+	 * welche Devices hinzugekommen, verschwunden oder sonstwie veraendert sind.
+	 * Der Vergleich wird einmal pro Update berechnet, egal wie viele Listener
+	 * angemeldet sind. Aufgerufen werden sie nur, wenn sich etwas geaendert hat.
+	 * <p>
+	 * Anders als bei {@link #registerRescanBroadcastReceiver(Context, Runnable)}
+	 * braucht es dafuer keinen eigenen Receiver; die Updates muessen aber trotzdem
+	 * irgendwie ausgeloest werden, also per registerRescanBroadcastReceiver 
+	 * (ggf. mit null als Runnable) oder eigenem Receiver.
+	 * 
+	 * @param l der Listener; wird im Thread des Updates aufgerufen
+	 * @since 1.6
+	 */
+	public static void addDeviceListener(DeviceDiff.Listener l) {
+		if (l==null) throw new IllegalArgumentException("l darf nicht null sein");
+		mListeners.addIfAbsent(l);
+	}
+	
+	
+	public static void removeDeviceListener(DeviceDiff.Listener l) {
+		mListeners.remove(l);
+	}
+	
+	
+	/**
+	 * Ab welcher Aenderung des freien Speichers ein Device in 
+	 * {@link DeviceDiff#getSizeChanged()} auftaucht
+	 * @param bytes die Schwelle in Bytes; Default 16 MB
+	 * @since 1.6
+	 */
+	public static void setSizeChangeThreshold(long bytes) {
+		if (bytes<0) throw new IllegalArgumentException("bytes darf nicht negativ sein");
+		mSizeChangeThreshold = bytes;
+	}
+	
+	
+	private static void dispatchDiff(DeviceSnapshot s) {
+		DeviceDiff diff = mTracker.update(s, mSizeChangeThreshold);
+		if (diff.isEmpty()) return;
+		if (DEBUG) Log.v(TAG, diff.toString());
+		for (DeviceDiff.Listener l : mListeners) l.onDevicesChanged(diff);
 	}
 
 	
@@ -491,125 +827,127 @@ public class Environment2  {
 	 * Sucht das Ger?t nach internen und externen Speicherkarten und USB-Ger?ten
 	 * ab. Wird automatisch beim App-Start aufgerufen (in einem static-initializer) und
 	 * muss nach bisherigen Erkenntnissen nie von der App aufgerufen werden.
+	 * Ausnahme: {@link #PROPERTY_LAZY_SCAN} ist gesetzt, dann wird beim ersten
+	 * Zugriff bzw. per {@link #prepareAsync(Runnable)} gescannt.
 	 */
 	@SuppressLint("NewApi")
-	public static void rescanDevices() {
-		mDeviceList = new ArrayList<DeviceDiv>(10);
-		mPrimary = new DeviceExternal();
+	public static synchronized void rescanDevices() {
+		// alles erst lokal aufbauen und am Ende als Snapshot veroeffentlichen
+		long t = Metrics.begin("Environment2.rescanDevices");
+		DeviceSnapshot s;
+		try {
+			s = scan();
+			mSnapshot = s;
+			changed();
+		} finally {
+			Metrics.end(Metrics.SCAN, t);
+		}
+		dispatchDiff(s);
+		saveSnapshot(s);
+	}
 
-		// vold.fstab lesen; TODO bei Misserfolg eine andere Methode
-		if (!scanVold("vold.fstab")) scanVold("vold.conf");
+
+	/** der eigentliche Scan fuer {@link #rescanDevices()}, ohne den Snapshot zu veroeffentlichen */
+	@SuppressLint("NewApi")
+	private static DeviceSnapshot scan() {
+		SpaceCache.invalidateAll();
+		ArrayList<DeviceDiv> deviceList = new ArrayList<DeviceDiv>(10);
+		DeviceExternal primary = new DeviceExternal();
+		DeviceDiv secondary;
+		boolean externalEmulated;
+
+		// vold.fstab lesen, bei Misserfolg vold.conf und dann /proc/self/mountinfo
+		DeviceCollector collector = new DeviceCollector(deviceList, primary);
+		for (DeviceScanner scanner : mScanners) {
+			long ts = Metrics.start();
+			boolean found = scanner.scan(collector);
+			if (ts!=0) Metrics.stop(Metrics.SCAN_SOURCE+scanner.getClass().getSimpleName(), ts);
+			if (found) break;
+		}
 
     	// zeigen /mnt/sdcard und /data auf denselben Speicher?
     	if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
-    		mExternalEmulated = Environment.isExternalStorageEmulated();
+    		externalEmulated = Environment.isExternalStorageEmulated();
     	} else {
     		// vor Honeycom gab es den unified memory noch nicht
-    		mExternalEmulated = false; 
+    		externalEmulated = false; 
     	}
 
 		// Pfad zur zweiten SD-Karte suchen; bisher nur Methode 1 implementiert
 		// Methode 1: einfach der erste Eintrag in vold.fstab, ggf. um ein /mnt/sdcard-Doppel bereinigt
 		// Methode 2: das erste mit "sd", falls nicht vorhanden das erste mit "ext"
 		// Methode 3: das erste verf?gbare
-		if (mDeviceList.size()==0) {
-			mSecondary = null;
+		if (deviceList.size()==0) {
+			secondary = null;
 			// TODO Ger?te mit interner SD und Android 2 wie Nexus S
-			// if (nexus) mPrimary.setRemovable(false);
+			// if (nexus) primary.setRemovable(false);
 		} else {
-			mSecondary = mDeviceList.get(0);
-			if (mSecondary.getName().contains("usb")) {
+			secondary = deviceList.get(0);
+			if (secondary.getName().contains("usb")) {
 				// z.B. HTC One X+
-				mSecondary = null;
+				secondary = null;
 			} else {
 				// jau, SD gefunden
-				mSecondary.setName("SD-Card");
+				secondary.setName("SD-Card");
 				// Hack
-				if (mPrimary.isRemovable()) Log.w(TAG, "isExternStorageRemovable overwrite (secondary sd found) auf false");
-				mPrimary.setRemovable(false);
+				if (primary.isRemovable()) Log.w(TAG, "isExternStorageRemovable overwrite (secondary sd found) auf false");
+				primary.setRemovable(false);
 			}
 		}
+		return new DeviceSnapshot(deviceList, primary, secondary, externalEmulated, getInternalStorage());
 	}
 	
 	
 	/**
-	 * Die vold-Konfigurationsdatei auswerten, die ?blicherweise 
-	 * in /system/etc/ liegt. 
-	 * @param name ein String mit dem Dateinamen (vold.fstab oder vold.conf)
-	 * @return true, wenn geklappt hat; false, wenn Datei nicht (vollst?ndig) 
-	 * 		gelesen werden konnte. Falls false, werden die bisher gelesenen
-	 * 		Devices nicht wieder gel?scht, sondern bleiben in der Liste 
-	 * 		enthalten. Bisher ist mir aber noch kein Ger?t untergekommen,
-	 * 		bei dem dieser Trick nicht funktioniert hat.
-	 */
-	private static boolean scanVold(String name) {
-		String s, f;
-		boolean prefixScan = true; // sdcard-Prefixes
-		SimpleStringSplitter sp = new SimpleStringSplitter(' ');
-    	try {
-    		BufferedReader buf = new BufferedReader(new FileReader(Environment.getRootDirectory().getAbsolutePath()+"/etc/"+name), 2048);
-    		s = buf.readLine();
-    		while (s!=null) {
-    			sp.setString(s.trim());
-    			f = sp.next(); // dev_mount oder anderes
-        		if ("dev_mount".equals(f)) {
-        			DeviceDiv d = new DeviceDiv(sp);
-        			
-        			if (TextUtils.equals(mPrimary.getMountPoint(), d.getMountPoint())) {
-        				// ein wenig Spezialkrams ?ber /mnt/sdcard herausfinden
-        				
-        				// wenn die Gingerbread-Funktion isExternalStorageRemovable nicht da ist, diesen Hinweis nutzen
-        				if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) 
-        					mPrimary.setRemovable(true); 
-        					// dann ist auch der Standard-Eintrag removable
-        					// eigentlich reicht das hier nicht, denn die vold-Eintr?ge f?r die prim?re SD-Karte sind viel komplexer, 
-        					// oft steht da was von non-removable. Doch diese ganzen propriet?ren Klamotten auszuwerden,
-        					// w?re viel zu komplex. Ein gangbarer Kompromiss scheint zu sein, sich ab 2.3 einfach auf
-        					// isExternalStorageRemovable zu verlassen, was schon oben in Device() gesetzt wird. Bei den
-        					// bisher aufgetauchten Ger?ten mit 2.2 wiederum scheint der Hinweis in vold zu klappen.vccfg
-        				
-        				// z.B. Galaxy Note h?ngt "encryptable_nonremovable" an
-        				while (sp.hasNext()) {
-        					f = sp.next();
-        					if (f.contains("nonremovable")) {
-        						mPrimary.setRemovable(false);
-        						Log.w(TAG, "isExternStorageRemovable overwrite ('nonremovable') auf false");
-        					}
-        				}
-        				prefixScan = false;
-        			} else 
-        				// nur in Liste aufnehmen, falls nicht Dupe von /mnt/sdcard
-        				mDeviceList.add(d);
-        			
-        		} else if (prefixScan) {
-					// Further investigations only if before sdcard entry
-					// something unclean, since it must actually occur in {}, which I am not checking here
-        			if ("discard".equals(f)) {
-        				// manche (Galaxy Note) schreiben "discard=disable" vor den sdcard-Eintrag.
-        				sp.next(); // "="
-        				f = sp.next();
-        				if ("disable".equals(f)) {
-        					mPrimary.setRemovable(false);
-        					Log.w(TAG, "isExternStorageRemovable overwrite ('discard=disable') auf false");
-        				} else if ("enable".equals(f)) {
-							// ha, denkste ... so far I have found the entry only with two mobile phones, (Galaxy Note, Galaxy Mini 2), and
-							// he did not vote *, but the cards were not removable.
-							// mPrimary.mRemovable = true;
-        					Log.w(TAG, "isExternStorageRemovable overwrite overwrite ('discard=enable'), bleibt auf "+mPrimary.isRemovable());
-        				} else
-        					Log.w(TAG, "disable-Eintrag unverst?ndlich: "+f);
-        			}
-        			
-        		}
-    			s = buf.readLine();
-    		}
-    		buf.close();
-    		Log.v(TAG, name+" gelesen; Ger?te gefunden: "+mDeviceList.size());
-    		return true;
-    	} catch (Exception e) {
-    		Log.e(TAG, "kann "+name+" nicht lesen: "+e.getMessage());
-    		return false;
-    	}
+	 * Nimmt die Ergebnisse der {@link DeviceScanner} entgegen und erzeugt
+	 * daraus die {@link DeviceDiv}-Eintraege.
+	 */
+	private static class DeviceCollector implements DeviceScanner.Sink {
+		final ArrayList<DeviceDiv> list;
+		final DeviceExternal primary;
+		
+		DeviceCollector(ArrayList<DeviceDiv> list, DeviceExternal primary) {
+			this.list = list;
+			this.primary = primary;
+		}
+		
+		@Override public String getPrimaryMountPoint() { return primary.getMountPoint(); }
+		@Override public boolean isPrimaryRemovable() { return primary.isRemovable(); }
+		@Override public void setPrimaryRemovable(boolean removable) { primary.setRemovable(removable); }
+		
+		@Override public void addDevice(String label, String mountPoint) {
+			for (DeviceDiv d : list) if (d.getMountPoint().equals(mountPoint)) return;
+			list.add(new DeviceDiv(label, mountPoint, primary));
+		}
+	}
+	
+	
+	/**
+	 * Die Scanner, die {@link #rescanDevices()} der Reihe nach probiert, bis einer
+	 * erfolgreich ist: vold.fstab, vold.conf und zuletzt die Mount-Tabelle des Kernels.
+	 * @return ein neues Array, das man z.B. erweitert an {@link #setScanners(DeviceScanner...)}
+	 * 		uebergeben kann
+	 * @since 1.6
+	 */
+	public static DeviceScanner[] getDefaultScanners() {
+		return new DeviceScanner[] {
+				new VoldScanner("vold.fstab"), 
+				new VoldScanner("vold.conf"), 
+				new MountInfoScanner()
+		};
+	}
+	
+	
+	/**
+	 * Ersetzt die Scanner, mit denen {@link #rescanDevices()} nach Devices sucht.
+	 * Wirkt erst beim naechsten Rescan; um schon den ersten Scan zu beeinflussen,
+	 * muss {@link #PROPERTY_LAZY_SCAN} gesetzt sein.
+	 * @param scanners die Scanner in der Reihenfolge, in der sie probiert werden;
+	 * 		null setzt auf {@link #getDefaultScanners()} zurueck
+	 * @since 1.6
+	 */
+	public static synchronized void setScanners(DeviceScanner... scanners) {
+		mScanners = scanners==null ? getDefaultScanners() : scanners.clone();
 	}
 	
 
@@ -626,34 +964,120 @@ public class Environment2  {
 	 * 			Is included in the list (taking into account available, But not key).
 	 * @param data a boolean that determines whether the data store (/ data) with
 	 * 				Is added to the list
-	 * @return an array containing all {@linkDevice} that match the search criteria
+	 * @return an array containing all {@link Device} that match the search criteria
+	 * @see #getDeviceList(String, boolean, boolean, boolean)
 	 */
 	public static Device[] getDevices(String key, boolean available, boolean intern, boolean data) {
-		if (key!=null) key = key.toLowerCase();
-		ArrayList<Device> temp = new ArrayList<Device>(mDeviceList.size()+2);
-		if (data) temp.add(getInternalStorage());
-		if (intern && ( !available || mPrimary.isAvailable())) temp.add(mPrimary);
-		for (Device d : mDeviceList) {
-			if ( ((key==null) || d.getName().toLowerCase().contains(key)) && (!available || d.isAvailable()) ) temp.add(d);
+		List<Device> l = getDeviceList(key, available, intern, data);
+		return l.toArray(new Device[l.size()]);
+	}
+	
+	
+	/**
+	 * Wie {@link #getDevices(String, boolean, boolean, boolean)}, liefert aber eine
+	 * unveraenderliche Liste, die bis zum naechsten Update bzw. Rescan fuer 
+	 * dieselben Parameter zwischengespeichert und von allen Aufrufern geteilt 
+	 * wird. Ein wiederholter Aufruf erzeugt also keine Objekte.
+	 * @since 1.6
+	 */
+	public static List<Device> getDeviceList(String key, boolean available, boolean intern, boolean data) {
+		DeviceSnapshot s = snapshot();
+		int generation = mGeneration.get();
+		DeviceQueryCache q = mQueries;
+		if (q==null || q.mGeneration!=generation || q.mSnapshot!=s) 
+			mQueries = q = new DeviceQueryCache(generation, s, getInternalStorage());
+		return q.get(key, available, intern, data);
+	}
+	
+
+	/**
+	 * Findet das Device, auf dem eine Datei liegt, also das mit dem laengsten
+	 * passenden MountPoint. Liegt z.B. die Zweit-SD unter /mnt/sdcard/external_sd,
+	 * kommt fuer Dateien dort diese und nicht /mnt/sdcard heraus. Der Index 
+	 * wird bei jedem Rescan neu aufgebaut; eine Abfrage kostet nur O(Pfadlaenge)
+	 * und erzeugt keine Objekte.
+	 * 
+	 * @param path ein absoluter, normalisierter Pfad
+	 * @return das Device (auch nicht verfuegbare) oder null, falls keins passt
+	 * @since 1.6
+	 */
+	public static Device deviceForPath(String path) {
+		return snapshot().mIndex.lookup(path);
+	}
+	
+	
+	/**
+	 * @see #deviceForPath(String)
+	 * @since 1.6
+	 */
+	public static Device deviceForPath(File f) {
+		return snapshot().mIndex.lookup(f.isAbsolute() ? f.getPath() : f.getAbsolutePath());
+	}
+	
+	
+	/**
+	 * Ordnet viele Dateien auf einmal ihren Devices zu, alle aus demselben Scan.
+	 * @param files die Dateien
+	 * @param out ein Array mindestens der Laenge von files, in das die Devices
+	 * 		(oder null) geschrieben werden
+	 * @since 1.6
+	 */
+	public static void deviceForPaths(File[] files, Device[] out) {
+		MountPointIndex<Device> index = snapshot().mIndex;
+		for (int i=0; i<files.length; i++) {
+			File f = files[i];
+			out[i] = f==null ? null : index.lookup(f.isAbsolute() ? f.getPath() : f.getAbsolutePath());
 		}
-		return temp.toArray(new Device[temp.size()]);
 	}
 	
+	
+	/**
+	 * Sucht ein verfuegbares, beschreibbares Device (einschliesslich /data), auf
+	 * dem noch mindestens bytes frei sind. Benutzt die Groessen aus dem
+	 * {@link SpaceCache} und zieht offene Reservierungen ab, siehe {@link Placement}.
+	 *
+	 * @param bytes die Groesse der zu schreibenden Daten
+	 * @param p nach welchen Regeln unter den passenden Devices gewaehlt wird
+	 * @return das Device oder null, falls keins genug Platz hat
+	 * @see #reserveSpace(long, Placement.Policy)
+	 * @since 1.6
+	 */
+	public static Device chooseDevice(long bytes, Placement.Policy p) {
+		if (p==null) throw new IllegalArgumentException("p darf nicht null sein");
+		return Placement.choose(getDeviceList(null, true, true, true), bytes, p);
+	}
+
+
+	/**
+	 * Wie {@link #chooseDevice(long, Placement.Policy)}, merkt den Platz aber
+	 * gleich vor, so dass parallele Aufrufe ihn nicht noch einmal vergeben.
+	 *
+	 * @return die Reservierung, die nach dem Schreiben freigegeben werden muss,
+	 * 		oder null, falls kein Device genug Platz hat
+	 * @since 1.6
+	 */
+	public static Placement.Reservation reserveSpace(long bytes, Placement.Policy p) {
+		if (p==null) throw new IllegalArgumentException("p darf nicht null sein");
+		return Placement.reserve(getDeviceList(null, true, true, true), bytes, p);
+	}
+
 
 	public static Device getPrimaryExternalStorage() {
-		return mPrimary;
+		return snapshot().mPrimary;
 	}
 	
 	
 	public static Device getSecondaryExternalStorage() throws NoSecondaryStorageException {
-		if (mSecondary==null) throw new NoSecondaryStorageException();
-		return mSecondary;
+		DeviceDiv secondary = snapshot().mSecondary;
+		if (secondary==null) throw new NoSecondaryStorageException();
+		return secondary;
 	}
 	
 	
 	public static Device getInternalStorage() {
-		if (mInternal==null) mInternal = new DeviceIntern();
-		return mInternal;
+		Device d = mInternal;
+		if (d==null) mInternal = d = new DeviceIntern();
+		return d;
 	}
 	
 	
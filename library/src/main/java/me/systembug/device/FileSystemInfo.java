@@ -0,0 +1,130 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Das Dateisystem hinter einem Device laut Mount-Tabelle (/proc/self/mounts):
+ * Typ (vfat, exfat, ext4, f2fs, fuse, sdcardfs ...), Mount-Optionen und
+ * Blockgroesse, dazu ein daraus abgeleitetes {@link IoProfile}.
+ * <p>
+ * Gesucht wird der Eintrag mit dem laengsten passenden MountPoint zum
+ * aufgeloesten Pfad des Devices, /sdcard landet also z.B. beim fuse- oder
+ * sdcardfs-Mount unter /storage/emulated. Die Mount-Tabelle wird einmal je
+ * {@link Environment2#getGeneration()} gelesen, das Ergebnis je Device
+ * zwischengespeichert; nach einem Update oder Rescan wird neu ermittelt.
+ * 
+ * @see Device#getFileSystem()
+ * @since 1.6
+ */
+public final class FileSystemInfo {
+	/** Typ, wenn kein passender Eintrag gefunden wurde */
+	public static final String UNKNOWN = "";
+	
+	/** die geparste Mount-Tabelle einer Generation */
+	private static final class Table {
+		final int mGeneration;
+		final MountPointIndex<MountTable.Entry> mIndex;
+		Table(int generation, MountPointIndex<MountTable.Entry> index) {
+			mGeneration = generation;
+			mIndex = index;
+		}
+	}
+	private static volatile Table mTable;
+	
+	final int mGeneration;
+	private final String mSource, mMountPoint, mType, mOptions;
+	private final long mBlockSize;
+	private final IoProfile mProfile;
+	
+	private FileSystemInfo(int generation, MountTable.Entry e, long blockSize) {
+		mGeneration = generation;
+		mSource = e==null ? UNKNOWN : e.source;
+		mMountPoint = e==null ? UNKNOWN : e.mountPoint;
+		mType = e==null ? UNKNOWN : e.type;
+		mOptions = e==null ? UNKNOWN : e.options;
+		mBlockSize = blockSize;
+		mProfile = e==null ? IoProfile.DEFAULT : IoProfile.forType(mType, blockSize);
+	}
+	
+	
+	/**
+	 * Ermittelt das Dateisystem fuer das Device; liest die Mount-Tabelle,
+	 * falls sie fuer diese Generation noch nicht gelesen wurde
+	 */
+	static FileSystemInfo lookup(Device d, int generation) {
+		Size s = d.mSize;
+		return new FileSystemInfo(generation, entry(d.getMountPoint(), generation), s==null ? 0 : s.getStats().getBlockSize());
+	}
+	
+	
+	/**
+	 * @param path ein Pfad; Symlinks werden aufgeloest, er muss also existieren
+	 * @return der MountPoint laut Mount-Tabelle, auf dem path liegt, oder null
+	 */
+	static String mountPointOf(String path) {
+		MountTable.Entry e = entry(path, Environment2.getGeneration());
+		return e==null ? null : e.mountPoint;
+	}
+	
+	
+	private static MountTable.Entry entry(String path, int generation) {
+		Table t = mTable;
+		if (t==null || t.mGeneration!=generation) {
+			MountPointIndex<MountTable.Entry> index = new MountPointIndex<MountTable.Entry>();
+			List<MountTable.Entry> entries = MountTable.read();
+			// spaetere Eintraege ueberdecken fruehere mit demselben MountPoint
+			if (entries!=null) for (MountTable.Entry e : entries) index.put(e.mountPoint, e);
+			mTable = t = new Table(generation, index);
+		}
+		try {
+			path = new File(path).getCanonicalPath();
+		} catch (IOException e) {
+			// dann eben der Pfad, wie er ist
+		}
+		return t.mIndex.lookup(path);
+	}
+	
+	
+	/** @return der Dateisystemtyp wie vfat, ext4 oder fuse; {@link #UNKNOWN}, falls nicht ermittelbar */
+	public String getType() { return mType; }
+	/** @return die Quelle des Mounts, z.B. /dev/block/vold/179:1 */
+	public String getSource() { return mSource; }
+	/** @return der MountPoint laut Mount-Tabelle; kann vom MountPoint des Devices abweichen */
+	public String getMountPoint() { return mMountPoint; }
+	/** @return die Mount-Optionen, durch Kommas getrennt, z.B. rw,nosuid,nodev,noatime */
+	public String getOptions() { return mOptions; }
+	/** @return die Blockgroesse in Bytes laut letztem statfs; 0, falls noch nicht gemessen */
+	public long getBlockSize() { return mBlockSize; }
+	/** @return die Empfehlungen fuer Zugriffe auf dieses Dateisystem */
+	public IoProfile getIoProfile() { return mProfile; }
+	
+	
+	/**
+	 * @param option eine Mount-Option wie "ro", "noatime" oder "sync"; bei
+	 * 		Optionen mit Wert (uid=1000) zaehlt nur der Name
+	 * @return true, wenn das Dateisystem mit dieser Option gemountet ist
+	 */
+	public boolean hasOption(String option) {
+		if (option==null) throw new IllegalArgumentException("option darf nicht null sein");
+		int len = option.length(), n = mOptions.length();
+		int p = 0;
+		while (p<n) {
+			int end = mOptions.indexOf(',', p);
+			if (end<0) end = n;
+			if (mOptions.startsWith(option, p) && (p+len==end || mOptions.charAt(p+len)=='=')) return true;
+			p = end+1;
+		}
+		return false;
+	}
+	
+	/** @return true, wenn das Dateisystem nur lesbar gemountet ist */
+	public boolean isReadOnly() { return hasOption("ro"); }
+	
+	
+	@Override
+	public String toString() {
+		return "FileSystemInfo["+mType+" "+mMountPoint+" ("+mOptions+"), blockSize="+mBlockSize+"]";
+	}
+}
@@ -0,0 +1,75 @@
+package me.systembug.device;
+
+/**
+ * Empfohlene Einstellungen fuer Schreib- und Lesezugriffe auf ein Device,
+ * abgeleitet aus dem Dateisystem ({@link FileSystemInfo}). Die Werte sind 
+ * Faustregeln, keine Messwerte; wer es genau wissen will, misst per 
+ * {@link DeviceBenchmark}.
+ * <ul>
+ * <li>vfat/exfat (SD-Karten, USB): fsync schreibt FAT und Verzeichniseintrag
+ * 		mit, grosse Verzeichnisse werden linear durchsucht.</li>
+ * <li>fuse/sdcardfs/esdfs (emulierter Speicher ab Android 4.4): jeder Aufruf
+ * 		geht durch einen Daemon bzw. eine zusaetzliche Schicht, kleine Writes
+ * 		sind teuer.</li>
+ * <li>ext4/f2fs: gehashte Verzeichnisse, fsync vergleichsweise billig.</li>
+ * </ul>
+ * 
+ * @see Device#getIoProfile()
+ * @since 1.6
+ */
+public final class IoProfile {
+	/** fuer unbekannte Dateisysteme */
+	public static final IoProfile DEFAULT = new IoProfile(32*1024, true, 1000);
+	
+	private final int mBufferSize;
+	private final boolean mFsyncExpensive;
+	private final int mMaxFilesPerDirectory;
+	
+	IoProfile(int bufferSize, boolean fsyncExpensive, int maxFilesPerDirectory) {
+		mBufferSize = bufferSize;
+		mFsyncExpensive = fsyncExpensive;
+		mMaxFilesPerDirectory = maxFilesPerDirectory;
+	}
+	
+	
+	/**
+	 * @param type der Dateisystemtyp aus der Mount-Tabelle
+	 * @param blockSize die Blockgroesse oder 0, falls unbekannt
+	 */
+	static IoProfile forType(String type, long blockSize) {
+		int min = blockSize>0 && blockSize<=1024*1024 ? (int) blockSize*8 : 0;
+		if (type==null) return DEFAULT;
+		if (type.equals("vfat") || type.equals("msdos"))
+			return new IoProfile(Math.max(64*1024, min), true, 500);
+		if (type.equals("exfat") || type.equals("texfat") || type.equals("sdfat"))
+			return new IoProfile(Math.max(128*1024, min), true, 2000);
+		if (type.equals("fuse") || type.startsWith("fuse."))
+			return new IoProfile(Math.max(128*1024, min), true, 1000);
+		if (type.equals("sdcardfs") || type.equals("esdfs"))
+			return new IoProfile(Math.max(64*1024, min), true, 5000);
+		if (type.equals("ext4") || type.equals("f2fs") || type.equals("ext3"))
+			return new IoProfile(Math.max(32*1024, min), false, 10000);
+		if (type.equals("yaffs2") || type.equals("ubifs"))
+			return new IoProfile(Math.max(16*1024, min), false, 1000);
+		return new IoProfile(Math.max(DEFAULT.mBufferSize, min), DEFAULT.mFsyncExpensive, DEFAULT.mMaxFilesPerDirectory);
+	}
+	
+	
+	/** @return eine sinnvolle Puffergroesse fuer Streams in Bytes */
+	public int getBufferSize() { return mBufferSize; }
+	
+	/** 
+	 * @return true, wenn fsync spuerbar kostet; dann besser viele Dateien 
+	 * 		schreiben und einmal am Ende syncen
+	 */
+	public boolean isFsyncExpensive() { return mFsyncExpensive; }
+	
+	/** @return ab wie vielen Dateien ein Verzeichnis besser aufgeteilt wird */
+	public int getMaxFilesPerDirectory() { return mMaxFilesPerDirectory; }
+	
+	@Override
+	public String toString() {
+		return "IoProfile[buffer="+mBufferSize+", fsyncExpensive="+mFsyncExpensive
+				+", maxFilesPerDirectory="+mMaxFilesPerDirectory+"]";
+	}
+}
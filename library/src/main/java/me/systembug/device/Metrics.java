@@ -0,0 +1,152 @@
+package me.systembug.device;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Messpunkte der Library: Zeiten fuer Scans, Updates und statfs-Aufrufe sowie 
+ * Zaehler fuer Cache-Treffer und Verfuegbarkeitspruefungen. Die Werte gehen an
+ * angemeldete {@link Listener}; was die damit machen (aufsummieren, loggen, an
+ * ein Monitoring schicken), bleibt der App ueberlassen.
+ * <p>
+ * Solange kein Listener angemeldet und {@link #setTraceEnabled(boolean)} nicht
+ * gesetzt ist, kostet jeder Messpunkt nur das Lesen eines volatile-Felds; es 
+ * wird weder die Uhr gelesen noch ein Objekt erzeugt.
+ * <p>
+ * Beispiel:
+ * <pre>
+ * Metrics.addListener(new Metrics.Listener() {
+ *     public void onTimer(String name, long nanos) { 
+ *         Log.d("Metrics", name+": "+nanos/1000+" us"); 
+ *     }
+ *     public void onCounter(String name, int delta) { }
+ * });
+ * </pre>
+ * 
+ * @since 1.6
+ */
+public final class Metrics {
+	/** Zeit fuer {@link Environment2#rescanDevices()} */
+	public static final String SCAN = "scan";
+	/** Praefix fuer die Zeit je {@link DeviceScanner}, gefolgt vom Klassennamen, z.B. "scan.VoldScanner" */
+	public static final String SCAN_SOURCE = "scan.";
+	/** Zeit fuer {@link Environment2#updateDevices()} */
+	public static final String UPDATE = "update";
+	/** Zeit je statfs, also je {@link StorageStats#sample(String)} bzw. {@link Size#getSpace(java.io.File)} */
+	public static final String STATFS = "statfs";
+	/** Zaehler: Verfuegbarkeit eines Devices geprueft (isDirectory, canRead, canWrite) */
+	public static final String PROBE = "probe";
+	/** Zaehler: Treffer bzw. Fehlschlaege in {@link SpaceCache} */
+	public static final String SPACE_CACHE_HIT = "spaceCache.hit";
+	public static final String SPACE_CACHE_MISS = "spaceCache.miss";
+	/** Zaehler: Treffer bzw. Fehlschlaege bei {@link Environment2#getDeviceList(String, boolean, boolean, boolean)} */
+	public static final String QUERY_CACHE_HIT = "queryCache.hit";
+	public static final String QUERY_CACHE_MISS = "queryCache.miss";
+	/** Zaehler: Treffer bzw. Fehlschlaege beim Cache der App-Verzeichnisse in {@link Device} */
+	public static final String DIR_CACHE_HIT = "dirCache.hit";
+	public static final String DIR_CACHE_MISS = "dirCache.miss";
+	/** Zeit je Gruppe in {@link AtomicFileWriter}: schreiben, syncen, umbenennen */
+	public static final String ATOMIC_COMMIT = "atomic.commit";
+	/** Zeit fuer {@link OpenFiles#release(String, long)} */
+	public static final String RELEASE = "release";
+	
+	/**
+	 * Empfaenger der Messwerte. Wird synchron im messenden Thread aufgerufen, 
+	 * also auch im Main-Thread; die Methoden sollten daher schnell sein und
+	 * duerfen keine Methoden von Environment2 aufrufen.
+	 */
+	public interface Listener {
+		/**
+		 * @param name einer der Namen aus {@link Metrics}
+		 * @param nanos die gemessene Dauer in Nanosekunden
+		 */
+		void onTimer(String name, long nanos);
+		
+		/**
+		 * @param name einer der Namen aus {@link Metrics}
+		 * @param delta um wie viel der Zaehler steigt, bisher immer 1
+		 */
+		void onCounter(String name, int delta);
+	}
+	
+	private static final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+	private static volatile boolean mEnabled = false;
+	private static volatile boolean mTrace = false;
+	
+	private Metrics() { }
+	
+	
+	public static synchronized void addListener(Listener l) {
+		if (l==null) throw new IllegalArgumentException("l darf nicht null sein");
+		mListeners.addIfAbsent(l);
+		mEnabled = true;
+	}
+	
+	
+	public static synchronized void removeListener(Listener l) {
+		mListeners.remove(l);
+		mEnabled = !mListeners.isEmpty();
+	}
+	
+	
+	/**
+	 * Schaltet Abschnitte fuer systrace bzw. den Profiler von Android Studio ein
+	 * ({@link Trace#beginSection(String)}, ab API 18). Sollte einmal beim Start 
+	 * der App gesetzt werden, nicht waehrend ein Scan laeuft.
+	 */
+	public static void setTraceEnabled(boolean enabled) {
+		mTrace = enabled && Build.VERSION.SDK_INT >= 18;
+	}
+	
+	
+	/**
+	 * Beginnt eine Messung
+	 * @param section der Name des Trace-Abschnitts
+	 * @return der Startzeitpunkt fuer {@link #end(String, long)}; 0, wenn nichts
+	 * 		gemessen wird
+	 */
+	@SuppressLint("NewApi")
+	static long begin(String section) {
+		if (mTrace) Trace.beginSection(section);
+		return mEnabled ? System.nanoTime() : 0;
+	}
+	
+	
+	/**
+	 * Beendet die mit {@link #begin(String)} begonnene Messung und meldet sie als
+	 * Timer name
+	 */
+	@SuppressLint("NewApi")
+	static void end(String name, long start) {
+		if (mTrace) Trace.endSection();
+		if (start!=0) timer(name, System.nanoTime()-start);
+	}
+	
+	
+	/**
+	 * Beginnt eine Zeitmessung ohne Trace-Abschnitt
+	 * @return 0, wenn nichts gemessen wird
+	 */
+	static long start() {
+		return mEnabled ? System.nanoTime() : 0;
+	}
+	
+	
+	static void stop(String name, long start) {
+		if (start!=0) timer(name, System.nanoTime()-start);
+	}
+	
+	
+	static void count(String name) {
+		if (!mEnabled) return;
+		for (Listener l : mListeners) l.onCounter(name, 1);
+	}
+	
+	
+	private static void timer(String name, long nanos) {
+		for (Listener l : mListeners) l.onTimer(name, nanos);
+	}
+}
@@ -0,0 +1,411 @@
+package me.systembug.device;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+
+/**
+ * Zieht die Daten einer App ({@link Device#getFilesDir(Context)} und
+ * {@link Device#getCacheDir(Context)}) von einem Device auf ein anderes um,
+ * z.B. wenn der Benutzer in der {@link me.systembug.device.pref.DevicesListPreference}
+ * ein anderes Device waehlt. Laeuft blockierend, gehoert also in einen
+ * Hintergrund-Thread:
+ * <pre>
+ * Migration m = new Migration(ctx, oldDevice, newDevice);
+ * m.migrate(listener);   // nach Abbruch einfach erneut aufrufen
+ * </pre>
+ * <ul>
+ * <li>Liegen beide Verzeichnisse im selben Dateisystem (z.B. zwei Unterverzeichnisse
+ * 		auf der SD-Karte), wird nur umbenannt. Das wird vorab einmal anhand der
+ * 		Mount-Tabelle entschieden ({@link FileSystemInfo}).</li>
+ * <li>Sonst wird per {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * 		kopiert, mehrere Dateien gleichzeitig, jede zuerst in eine .e2part-Datei,
+ * 		die nach dem fsync umbenannt wird. Danach wird die Quelle geloescht.</li>
+ * <li>Wird die Migration unterbrochen (Abbruch, Absturz, Karte gezogen), ist jede
+ * 		Datei entweder noch in der Quelle oder schon im Ziel. Fuer grosse Dateien
+ * 		steht in einer Checkpoint-Datei im Ziel, wie weit sie kopiert wurden; 
+ * 		eingetragen wird ein Stand erst, nachdem die .e2part-Datei bis dorthin
+ * 		gesynct ist. Beim naechsten Aufruf wird die .e2part-Datei auf diesen 
+ * 		Stand gekuerzt und dort weitergemacht, falls die Quelle unveraendert ist.</li>
+ * </ul>
+ * Danach werden die Messwerte beider Devices im {@link SpaceCache} verworfen.
+ *
+ * @since 1.6
+ */
+public class Migration {
+
+	/**
+	 * Fortschritt der Migration; wird aus den Worker-Threads aufgerufen
+	 */
+	public interface Listener {
+		/**
+		 * @param bytes bisher uebertragene Bytes (inkl. umbenannter Dateien)
+		 * @param totalBytes alle zu uebertragenden Bytes dieses Laufs
+		 * @param files fertige Dateien
+		 * @param totalFiles alle Dateien dieses Laufs
+		 */
+		void onProgress(long bytes, long totalBytes, int files, int totalFiles);
+	}
+
+	private static final String PART = ".e2part";
+	private static final String CHECKPOINT = ".e2migration";
+	private static final int MAGIC = 0x45324d47; // "E2MG"
+	private static final int VERSION = 2;
+	/** kleinere Dateien werden nach einem Abbruch einfach neu kopiert */
+	private static final long CHECKPOINT_MIN = 1024*1024;
+	/** so viel wird je transferTo-Aufruf kopiert, dazwischen wird auf Abbruch geprueft */
+	private static final long CHUNK = 4*1024*1024;
+
+	/** eine Datei der Quelle mit ihrem Ziel */
+	private static final class Job {
+		final File src, dst;
+		final String key;
+		final long length, mtime;
+		/** true, wenn Quelle und Ziel im selben Dateisystem liegen */
+		final boolean rename;
+		Job(File src, File dst, String key, boolean rename) {
+			this.src = src;
+			this.dst = dst;
+			this.key = key;
+			this.rename = rename;
+			length = src.length();
+			mtime = src.lastModified();
+		}
+	}
+
+	/** Stand einer teilweise kopierten Datei, siehe {@link #CHECKPOINT} */
+	private static final class Partial {
+		/** Laenge und mtime der Quelle, um Aenderungen zu erkennen */
+		final long length, mtime;
+		/** bis hierher ist die .e2part-Datei gesynct */
+		final long offset;
+		Partial(long length, long mtime, long offset) {
+			this.length = length;
+			this.mtime = mtime;
+			this.offset = offset;
+		}
+	}
+
+	private final File[] mFrom, mTo;
+	private int mThreads = 2;
+	private final AtomicBoolean mCancelled = new AtomicBoolean();
+
+	/**
+	 * @param ctx der Context der App
+	 * @param from das bisherige Device
+	 * @param to das neue Device; muss beschreibbar sein
+	 */
+	public Migration(Context ctx, Device from, Device to) {
+		if (from==null || to==null) throw new IllegalArgumentException("from und to duerfen nicht null sein");
+		mFrom = new File[] { from.getFilesDir(ctx), from.getCacheDir(ctx) };
+		mTo = new File[] { to.getFilesDir(ctx), to.getCacheDir(ctx) };
+	}
+
+
+	/**
+	 * Fuer eigene Verzeichnisse ausserhalb von getFilesDir/getCacheDir
+	 */
+	public Migration(File from, File to) {
+		if (from==null || to==null) throw new IllegalArgumentException("from und to duerfen nicht null sein");
+		mFrom = new File[] { from };
+		mTo = new File[] { to };
+	}
+
+
+	/**
+	 * @param threads wie viele Dateien gleichzeitig kopiert werden; Default 2
+	 * @return this
+	 */
+	public Migration setThreads(int threads) {
+		if (threads<1) throw new IllegalArgumentException("threads muss mindestens 1 sein");
+		mThreads = threads;
+		return this;
+	}
+
+
+	/**
+	 * Bricht eine laufende Migration ab; die gerade kopierten Dateien werden
+	 * noch bis zum naechsten Block weitergefuehrt und dann im Checkpoint vermerkt.
+	 * Kommt der Aufruf, bevor {@link #migrate(Listener)} losgelegt hat, gibt
+	 * dieser naechste Lauf sofort false zurueck; der Abbruch gilt also immer
+	 * genau fuer einen Lauf.
+	 */
+	public void cancel() {
+		mCancelled.set(true);
+	}
+
+
+	/**
+	 * Fuehrt die Migration durch bzw. setzt eine abgebrochene fort.
+	 * @param l der Listener fuer den Fortschritt; kann null sein
+	 * @return true, wenn alles umgezogen ist; false nach {@link #cancel()}, auch wenn
+	 * 		der Abbruch schon vor diesem Aufruf kam. Ein weiterer Aufruf setzt fort.
+	 * @throws IOException wenn eine Datei nicht kopiert werden konnte (z.B. Ziel voll);
+	 * 		die bis dahin umgezogenen Dateien bleiben im Ziel
+	 */
+	public boolean migrate(final Listener l) throws IOException, InterruptedException {
+		// ein cancel() vor dem Start gilt fuer diesen Lauf und wird hier verbraucht
+		if (mCancelled.getAndSet(false)) return false;
+		final ArrayList<Job> jobs = new ArrayList<Job>();
+		long total = 0;
+		for (int i=0; i<mFrom.length; i++) {
+			if (mFrom[i]==null || mTo[i]==null || !mFrom[i].isDirectory()) continue;
+			if (mFrom[i].getCanonicalPath().equals(mTo[i].getCanonicalPath())) continue;
+			if (!mTo[i].isDirectory() && !mTo[i].mkdirs()) throw new IOException("kann "+mTo[i]+" nicht anlegen");
+			String a = FileSystemInfo.mountPointOf(mFrom[i].getPath()), b = FileSystemInfo.mountPointOf(mTo[i].getPath());
+			collect(mFrom[i], mTo[i], "", a!=null && a.equals(b), jobs);
+		}
+		for (Job j : jobs) total += j.length;
+		final long totalBytes = total;
+		final int totalFiles = jobs.size();
+
+		final HashMap<File, HashMap<String, Partial>> checkpoints = new HashMap<File, HashMap<String, Partial>>();
+		for (File to : mTo) if (to!=null) checkpoints.put(to, loadCheckpoint(to));
+
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicInteger files = new AtomicInteger();
+		final IOException[] error = new IOException[1];
+		final CountDownLatch done = new CountDownLatch(jobs.size());
+
+		ExecutorService pool = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+			@Override public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Migration-"+mCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		try {
+			for (final Job job : jobs) {
+				pool.execute(new Runnable() {
+					@Override public void run() {
+						try {
+							if (mCancelled.get()) return;
+							// rename ersetzt ein vorhandenes Ziel; klappt es trotzdem nicht
+							// (z.B. Ziel ist ein Verzeichnis), wird diese eine Datei kopiert
+							if (job.rename && job.src.renameTo(job.dst)) {
+								progress(l, bytes.addAndGet(job.length), totalBytes, files.incrementAndGet(), totalFiles);
+								return;
+							}
+							File root = rootOf(job.dst);
+							HashMap<String, Partial> cp = checkpoints.get(root);
+							if (copy(job, root, cp, bytes, l, totalBytes, files, totalFiles))
+								progress(l, bytes.get(), totalBytes, files.incrementAndGet(), totalFiles);
+						} catch (IOException e) {
+							synchronized (error) {
+								if (error[0]==null) error[0] = e;
+							}
+							mCancelled.set(true);
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+		} finally {
+			pool.shutdown();
+			invalidateSpace();
+		}
+		// der Abbruch gehoert zu diesem Lauf, der naechste darf fortsetzen
+		boolean cancelled = mCancelled.getAndSet(false);
+		if (error[0]!=null) throw error[0];
+		if (cancelled) return false;
+
+		for (int i=0; i<mFrom.length; i++) {
+			if (mTo[i]!=null) new File(mTo[i], CHECKPOINT).delete();
+			if (mFrom[i]!=null) deleteEmptyDirs(mFrom[i]);
+		}
+		return true;
+	}
+
+
+	/** auf beiden Seiten hat sich der freie Platz geaendert */
+	private void invalidateSpace() {
+		for (File[] dirs : new File[][] { mFrom, mTo }) {
+			for (File dir : dirs) {
+				Device d = dir==null ? null : Environment2.deviceForPath(dir);
+				if (d!=null) SpaceCache.invalidate(d);
+			}
+		}
+	}
+
+
+	private File rootOf(File dst) {
+		String p = dst.getPath();
+		for (File to : mTo) {
+			if (to!=null && p.startsWith(to.getPath()+"/")) return to;
+		}
+		return dst.getParentFile();
+	}
+
+
+	/** @return true, wenn die Datei fertig ist; false nach Abbruch */
+	private boolean copy(Job job, File root, HashMap<String, Partial> cp, AtomicLong bytes, Listener l,
+			long totalBytes, AtomicInteger files, int totalFiles) throws IOException {
+		File part = new File(job.dst.getPath()+PART);
+		long pos = 0;
+		boolean track = cp!=null && job.length>=CHECKPOINT_MIN;
+		if (track) {
+			Partial e;
+			synchronized (cp) { e = cp.get(job.key); }
+			// hinter dem eingetragenen Stand kann nach einem Absturz Muell stehen
+			if (e!=null && e.length==job.length && e.mtime==job.mtime && part.isFile())
+				pos = Math.min(e.offset, part.length());
+			checkpoint(root, cp, job, pos);
+		}
+		if (pos==0) part.delete();
+		bytes.addAndGet(pos);
+
+		FileInputStream in = new FileInputStream(job.src);
+		try {
+			// ohne O_APPEND, sonst kann transferTo kein sendfile benutzen;
+			// die Schreibposition wird stattdessen explizit gesetzt
+			RandomAccessFile out = new RandomAccessFile(part, "rw");
+			try {
+				FileChannel src = in.getChannel(), dst = out.getChannel();
+				dst.truncate(pos);
+				dst.position(pos);
+				while (pos<job.length) {
+					if (mCancelled.get()) return false;
+					long n = src.transferTo(pos, Math.min(CHUNK, job.length-pos), dst);
+					if (n<=0) throw new IOException("kann "+job.src+" nicht kopieren");
+					pos += n;
+					if (track && pos<job.length) {
+						out.getFD().sync();
+						checkpoint(root, cp, job, pos);
+					}
+					progress(l, bytes.addAndGet(n), totalBytes, files.get(), totalFiles);
+				}
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+
+		if (job.dst.exists()) job.dst.delete();
+		if (!part.renameTo(job.dst)) throw new IOException("kann "+part+" nicht umbenennen");
+		job.dst.setLastModified(job.mtime);
+		job.src.delete();
+		if (track) synchronized (cp) {
+			cp.remove(job.key);
+			saveCheckpoint(root, cp);
+		}
+		return true;
+	}
+
+
+	/** traegt pos als gesyncten Stand der Datei ein */
+	private static void checkpoint(File root, HashMap<String, Partial> cp, Job job, long pos) throws IOException {
+		synchronized (cp) {
+			cp.put(job.key, new Partial(job.length, job.mtime, pos));
+			saveCheckpoint(root, cp);
+		}
+	}
+
+
+	private static void progress(Listener l, long bytes, long totalBytes, int files, int totalFiles) {
+		if (l!=null) l.onProgress(bytes, totalBytes, files, totalFiles);
+	}
+
+
+	/** sammelt alle Dateien unter dir und legt die Zielverzeichnisse an */
+	private static void collect(File dir, File target, String prefix, boolean rename, ArrayList<Job> jobs) throws IOException {
+		if (!target.isDirectory() && !target.mkdirs()) throw new IOException("kann "+target+" nicht anlegen");
+		File[] list = dir.listFiles();
+		if (list==null) return;
+		for (File f : list) {
+			String name = f.getName();
+			if (f.isDirectory())
+				collect(f, new File(target, name), prefix+name+"/", rename, jobs);
+			else if (!name.endsWith(PART) && !(prefix.length()==0 && name.equals(CHECKPOINT)))
+				jobs.add(new Job(f, new File(target, name), prefix+name, rename));
+		}
+	}
+
+
+	/** loescht leere Unterverzeichnisse, dir selbst bleibt */
+	private static void deleteEmptyDirs(File dir) {
+		File[] list = dir.listFiles();
+		if (list==null) return;
+		for (File f : list) {
+			if (f.isDirectory()) {
+				deleteEmptyDirs(f);
+				f.delete(); // klappt nur, wenn leer
+			}
+		}
+	}
+
+
+	private static HashMap<String, Partial> loadCheckpoint(File root) {
+		HashMap<String, Partial> map = new HashMap<String, Partial>();
+		File f = new File(root, CHECKPOINT);
+		if (!f.isFile()) return map;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 4096));
+			try {
+				if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return map;
+				int n = in.readInt();
+				for (int i=0; i<n; i++) {
+					String key = in.readUTF();
+					long length = in.readLong(), mtime = in.readLong(), offset = in.readLong();
+					map.put(key, new Partial(length, mtime, offset));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// kaputter Checkpoint: dann werden die .e2part-Dateien eben neu geschrieben
+			map.clear();
+		}
+		return map;
+	}
+
+
+	private static void saveCheckpoint(File root, HashMap<String, Partial> map) throws IOException {
+		File f = new File(root, CHECKPOINT);
+		File tmp = new File(root, CHECKPOINT+".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 4096));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(map.size());
+			for (Map.Entry<String, Partial> e : map.entrySet()) {
+				out.writeUTF(e.getKey());
+				out.writeLong(e.getValue().length);
+				out.writeLong(e.getValue().mtime);
+				out.writeLong(e.getValue().offset);
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		if (!tmp.renameTo(f)) {
+			tmp.delete();
+			throw new IOException("kann "+f+" nicht schreiben");
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package me.systembug.device;
+
+import java.io.File;
+
+/**
+ * Scanner fuer die Mount-Tabelle des Kernels, also /proc/self/mountinfo oder
+ * (falls nicht vorhanden) /proc/mounts. Funktioniert auch auf Geraeten,
+ * bei denen es keine vold.fstab mehr gibt (ab Android 4.3).
+ * <p>
+ * Die Datei wird in einem Rutsch in einen wiederverwendeten Puffer gelesen
+ * und dort zeilenweise zerlegt (beides per {@link MountTable}, das auch
+ * {@link MountWatcher} benutzt), ohne pro Zeile Objekte zu erzeugen; nur fuer
+ * Zeilen, deren Dateisystem-Typ passt, entstehen Strings. Die Klasse
+ * benutzt nichts aus android.*, laesst sich also mit Fixture-Dateien auch
+ * in einer normalen JVM testen und messen.
+ * <p>
+ * Nicht aufgenommen werden MountPoints, die nur Android-interne Sichten auf ein
+ * Device sind (/mnt/runtime, /mnt/media_rw usw.), Partitionen des Herstellers
+ * (/firmware, /persist usw., die teils ebenfalls vfat sind) und solche, die den 
+ * primaeren Speicher enthalten (z.B. /storage/emulated fuer /storage/emulated/0).
+ * 
+ * @see Environment2#getDefaultScanners()
+ * @since 1.6
+ */
+public class MountInfoScanner implements DeviceScanner {
+	public static final String MOUNTINFO = "/proc/self/mountinfo";
+	public static final String MOUNTS = "/proc/mounts";
+	
+	/** Dateisystem-Typen, die fuer SD-Karten und USB-Geraete in Frage kommen */
+	public static final String[] DEFAULT_TYPES = {"vfat", "exfat", "sdcardfs", "fuse", "fuseblk"};
+	
+	private static final String[] IGNORED_PREFIXES = {
+		"/mnt/runtime/", "/mnt/media_rw/", "/mnt/secure/", "/mnt/asec", "/mnt/obb", 
+		"/mnt/user/", "/mnt/pass_through/", "/mnt/expand/", "/data/", "/system/", "/proc/", "/sys/",
+		// Hersteller-Partitionen, oft vfat (z.B. das Modem-Image bei Qualcomm)
+		"/firmware/", "/vendor/", "/persist/", "/efs/", "/dsp/", "/bt_firmware/"
+	};
+	
+	private final File mFile;
+	private final char[][] mTypes;
+	private final MountTable.Buffer mBuffer = new MountTable.Buffer();
+	
+	
+	/**
+	 * Scanner fuer /proc/self/mountinfo mit Fallback auf /proc/mounts und
+	 * den {@link #DEFAULT_TYPES}
+	 */
+	public MountInfoScanner() {
+		this(null, DEFAULT_TYPES);
+	}
+	
+	
+	/**
+	 * @param file die zu lesende Datei im Format von mountinfo oder mounts, 
+	 * 		das Format wird selbst erkannt. Bei null wird {@link #MOUNTINFO}
+	 * 		und ggf. {@link #MOUNTS} gelesen.
+	 * @param types die Dateisystem-Typen, deren MountPoints gemeldet werden
+	 */
+	public MountInfoScanner(File file, String... types) {
+		mFile = file;
+		mTypes = new char[types.length][];
+		for (int i=0; i<types.length; i++) mTypes[i] = types[i].toCharArray();
+	}
+
+	
+	@Override
+	public boolean scan(Sink sink) {
+		synchronized (mBuffer) {
+			boolean read;
+			if (mFile!=null) 
+				read = MountTable.read(mFile, mBuffer);
+			else
+				read = MountTable.read(new File(MOUNTINFO), mBuffer) || MountTable.read(new File(MOUNTS), mBuffer);
+			if (!read) return false;
+			parse(mBuffer.chars, mBuffer.length, sink);
+			return true;
+		}
+	}
+	
+	
+	/**
+	 * Zerlegt den Inhalt einer mountinfo- oder mounts-Datei und meldet alle passenden
+	 * MountPoints an sink.
+	 * @param buf der Dateiinhalt
+	 * @param len die Anzahl gueltiger Zeichen in buf
+	 * @return die Anzahl gemeldeter Devices
+	 */
+	public int parse(char[] buf, int len, final Sink sink) {
+		final String primary = sink.getPrimaryMountPoint();
+		final int[] count = new int[1];
+		MountTable.parse(buf, len, new MountTable.Visitor() {
+			@Override public void line(char[] buf, int srcStart, int srcEnd, int mpStart, int mpEnd,
+					int typeStart, int typeEnd, int optStart, int optEnd) {
+				if (mpEnd==mpStart || !matchesType(buf, typeStart, typeEnd)) return;
+				String mountPoint = MountTable.unescape(buf, mpStart, mpEnd);
+				if (isCandidate(mountPoint, primary)) {
+					sink.addDevice(srcEnd>srcStart ? MountTable.unescape(buf, srcStart, srcEnd) : mountPoint, mountPoint);
+					count[0]++;
+				}
+			}
+		});
+		return count[0];
+	}
+	
+	
+	private boolean matchesType(char[] buf, int start, int end) {
+		if (end<=start) return false;
+		for (char[] t : mTypes) {
+			if (t.length!=end-start) continue;
+			int i = 0;
+			while (i<t.length && t[i]==buf[start+i]) i++;
+			if (i==t.length) return true;
+		}
+		return false;
+	}
+	
+	
+	private static boolean isCandidate(String mountPoint, String primary) {
+		for (String s : IGNORED_PREFIXES) {
+			if (mountPoint.startsWith(s)) return false;
+			// "/data/" trifft auch /data selbst
+			if (s.endsWith("/") && mountPoint.length()==s.length()-1 && s.startsWith(mountPoint)) return false;
+		}
+		if (primary!=null && primary.startsWith(mountPoint) 
+				&& (primary.length()==mountPoint.length() || primary.charAt(mountPoint.length())=='/'))
+			return false;
+		return true;
+	}
+}
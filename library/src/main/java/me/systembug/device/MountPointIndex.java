@@ -0,0 +1,90 @@
+package me.systembug.device;
+
+/**
+ * Praefix-Baum ueber MountPoints, der zu einem Pfad den MountPoint mit dem
+ * laengsten passenden Praefix findet, also z.B. fuer /mnt/sdcard/external_sd/DCIM
+ * das Device /mnt/sdcard/external_sd und nicht /mnt/sdcard. Ein MountPoint passt
+ * nur an Verzeichnisgrenzen (/mnt/sdcard passt nicht zu /mnt/sdcard2).
+ * <p>
+ * Eine Abfrage kostet O(Pfadlaenge) und erzeugt keine Objekte. Der Pfad muss
+ * absolut und normalisiert sein (kein "..", keine doppelten "/"). 
+ * Wird pro Scan einmal aufgebaut (siehe {@link DeviceSnapshot}) und danach nur 
+ * noch gelesen; {@link #put(String, Object)} ist nicht thread-sicher.
+ * Die Klasse nutzt nichts aus android.*.
+ * 
+ * @param <T> der Typ der Werte, ueblicherweise {@link Device}
+ * @see Environment2#deviceForPath(String)
+ * @since 1.6
+ */
+public final class MountPointIndex<T> {
+	private static final char[] NO_KEYS = new char[0];
+	
+	private static final class Node {
+		char[] keys = NO_KEYS;
+		Node[] children;
+		Object value;
+	}
+	
+	private final Node mRoot = new Node();
+	private int mSize;
+	
+	
+	/**
+	 * Nimmt einen MountPoint auf; ein abschliessendes "/" wird ignoriert, "/" 
+	 * selbst passt zu allen Pfaden. Ein schon vorhandener Eintrag wird ueberschrieben.
+	 */
+	public void put(String mountPoint, T value) {
+		int len = mountPoint.length();
+		while (len>0 && mountPoint.charAt(len-1)=='/') len--;
+		Node n = mRoot;
+		for (int i=0; i<len; i++) {
+			char c = mountPoint.charAt(i);
+			Node child = child(n, c);
+			if (child==null) {
+				child = new Node();
+				int k = n.keys.length;
+				char[] keys = new char[k+1];
+				Node[] children = new Node[k+1];
+				System.arraycopy(n.keys, 0, keys, 0, k);
+				if (k>0) System.arraycopy(n.children, 0, children, 0, k);
+				keys[k] = c;
+				children[k] = child;
+				n.keys = keys;
+				n.children = children;
+			}
+			n = child;
+		}
+		if (n.value==null) mSize++;
+		n.value = value;
+	}
+	
+	
+	private static Node child(Node n, char c) {
+		char[] keys = n.keys;
+		for (int i=0; i<keys.length; i++) if (keys[i]==c) return n.children[i];
+		return null;
+	}
+	
+	
+	/**
+	 * @param path ein absoluter Pfad
+	 * @return der Wert des laengsten passenden MountPoints oder null
+	 */
+	@SuppressWarnings("unchecked")
+	public T lookup(CharSequence path) {
+		int len = path.length();
+		Node n = mRoot;
+		Object best = null;
+		int i = 0;
+		while (true) {
+			if (n.value!=null && (i==len || path.charAt(i)=='/')) best = n.value;
+			if (i==len) break;
+			n = child(n, path.charAt(i++));
+			if (n==null) break;
+		}
+		return (T) best;
+	}
+	
+	
+	public int size() { return mSize; }
+}
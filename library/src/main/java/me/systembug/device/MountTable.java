@@ -0,0 +1,187 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Liest die Mount-Tabelle des Kernels (/proc/self/mounts): je Zeile Quelle,
+ * MountPoint, Dateisystemtyp und Optionen. Wird von {@link MountWatcher} und
+ * fuer {@link Device#getFileSystem()} benutzt.
+ * <p>
+ * Das Lesen in einen wiederverwendbaren Puffer ({@link #read(File, Buffer)})
+ * und das Zerlegen der Zeilen ({@link #parse(char[], int, Visitor)}) teilt
+ * sich die Klasse mit dem {@link MountInfoScanner}; beides versteht sowohl
+ * das Format von mounts als auch das von mountinfo.
+ *
+ * @since 1.6
+ */
+final class MountTable {
+	private static final String MOUNTS = "/proc/self/mounts";
+
+	/** eine Zeile der Tabelle */
+	static final class Entry {
+		final String source, mountPoint, type, options;
+		Entry(String source, String mountPoint, String type, String options) {
+			this.source = source;
+			this.mountPoint = mountPoint;
+			this.type = type;
+			this.options = options;
+		}
+	}
+
+	/** Puffer fuer {@link MountTable#read(File, Buffer)}; wird bei Bedarf vergroessert */
+	static final class Buffer {
+		char[] chars = new char[8192];
+		int length;
+	}
+
+	/**
+	 * Bekommt die Felder jeder Zeile als Bereiche [start, end) in buf; fehlt ein
+	 * Feld, ist start==end. Die Felder sind noch nicht per {@link MountTable#unescape(char[], int, int)}
+	 * dekodiert, so dass man nur fuer die Zeilen Strings erzeugen muss, die man braucht.
+	 */
+	interface Visitor {
+		void line(char[] buf, int srcStart, int srcEnd, int mpStart, int mpEnd,
+				int typeStart, int typeEnd, int optStart, int optEnd);
+	}
+
+	private MountTable() { }
+
+
+	/** @return die Eintrage in der Reihenfolge der Datei oder null, falls nicht lesbar */
+	static List<Entry> read() {
+		Buffer b = new Buffer();
+		if (!read(new File(MOUNTS), b)) return null;
+		return parse(b.chars, b.length);
+	}
+
+
+	/**
+	 * Liest die Datei komplett in b; /proc-Dateien haben keine Laenge, daher
+	 * wird bis EOF gelesen und der Puffer bei Bedarf vergroessert.
+	 * @return false bei einem Fehler
+	 */
+	static boolean read(File f, Buffer b) {
+		try {
+			Reader r = new FileReader(f);
+			try {
+				int len = 0, n;
+				while ((n = r.read(b.chars, len, b.chars.length-len))>0) {
+					len += n;
+					if (len==b.chars.length) {
+						char[] c = new char[b.chars.length*2];
+						System.arraycopy(b.chars, 0, c, 0, len);
+						b.chars = c;
+					}
+				}
+				b.length = len;
+				return true;
+			} finally {
+				r.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+
+	static List<Entry> parse(char[] buf, int len) {
+		final ArrayList<Entry> list = new ArrayList<Entry>(32);
+		parse(buf, len, new Visitor() {
+			@Override public void line(char[] buf, int srcStart, int srcEnd, int mpStart, int mpEnd,
+					int typeStart, int typeEnd, int optStart, int optEnd) {
+				if (optEnd==optStart) return;
+				list.add(new Entry(unescape(buf, srcStart, srcEnd), unescape(buf, mpStart, mpEnd),
+						new String(buf, typeStart, typeEnd-typeStart), new String(buf, optStart, optEnd-optStart)));
+			}
+		});
+		return list;
+	}
+
+
+	/**
+	 * Zerlegt den Inhalt einer mounts- oder mountinfo-Datei, ohne pro Zeile
+	 * Objekte zu erzeugen. Das Format wird je Zeile erkannt: mountinfo beginnt
+	 * mit zwei Zahlen.
+	 * @param buf der Dateiinhalt
+	 * @param len die Anzahl gueltiger Zeichen in buf
+	 */
+	static void parse(char[] buf, int len, Visitor v) {
+		int pos = 0;
+		while (pos<len) {
+			int eol = pos;
+			while (eol<len && buf[eol]!='\n') eol++;
+			int end = eol>pos && buf[eol-1]=='\r' ? eol-1 : eol;
+
+			// mountinfo: id parent maj:min root mountpoint opts [optional...] - fstype source superopts
+			// mounts: source mountpoint fstype opts dump pass
+			int s0 = skipSpaces(buf, pos, end), e0 = fieldEnd(buf, s0, end);
+			int s1 = skipSpaces(buf, e0, end), e1 = fieldEnd(buf, s1, end);
+			if (isNumber(buf, s0, e0) && isNumber(buf, s1, e1)) {
+				int p = fieldEnd(buf, skipSpaces(buf, e1, end), end); // maj:min
+				p = fieldEnd(buf, skipSpaces(buf, p, end), end); // root
+				int mpStart = skipSpaces(buf, p, end), mpEnd = fieldEnd(buf, mpStart, end);
+				int optStart = skipSpaces(buf, mpEnd, end), optEnd = fieldEnd(buf, optStart, end);
+				// optionale Felder bis zum Trenner "-"
+				p = optEnd;
+				int s;
+				do {
+					s = skipSpaces(buf, p, end);
+					p = fieldEnd(buf, s, end);
+				} while (s<end && !(p-s==1 && buf[s]=='-'));
+				int typeStart = skipSpaces(buf, p, end), typeEnd = fieldEnd(buf, typeStart, end);
+				int srcStart = skipSpaces(buf, typeEnd, end), srcEnd = fieldEnd(buf, srcStart, end);
+				v.line(buf, srcStart, srcEnd, mpStart, mpEnd, typeStart, typeEnd, optStart, optEnd);
+			} else {
+				int typeStart = skipSpaces(buf, e1, end), typeEnd = fieldEnd(buf, typeStart, end);
+				int optStart = skipSpaces(buf, typeEnd, end), optEnd = fieldEnd(buf, optStart, end);
+				v.line(buf, s0, e0, s1, e1, typeStart, typeEnd, optStart, optEnd);
+			}
+			pos = eol+1;
+		}
+	}
+
+
+	private static int skipSpaces(char[] buf, int p, int end) {
+		while (p<end && buf[p]==' ') p++;
+		return p;
+	}
+
+
+	private static int fieldEnd(char[] buf, int p, int end) {
+		while (p<end && buf[p]!=' ') p++;
+		return p;
+	}
+
+
+	private static boolean isNumber(char[] buf, int start, int end) {
+		if (end<=start) return false;
+		for (int i=start; i<end; i++) if (buf[i]<'0' || buf[i]>'9') return false;
+		return true;
+	}
+
+
+	/** Der Kernel schreibt Leerzeichen usw. oktal (\040); end zeigt hinter das Feld */
+	static String unescape(char[] buf, int start, int end) {
+		int i = start;
+		while (i<end && buf[i]!='\\') i++;
+		if (i==end) return new String(buf, start, end-start);
+		StringBuilder sb = new StringBuilder(end-start);
+		sb.append(buf, start, i-start);
+		while (i<end) {
+			char c = buf[i];
+			if (c=='\\' && i+3<end) {
+				sb.append((char) ((buf[i+1]-'0')*64 + (buf[i+2]-'0')*8 + (buf[i+3]-'0')));
+				i += 4;
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+}
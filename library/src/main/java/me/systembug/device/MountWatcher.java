@@ -0,0 +1,181 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Erkennt Ein- und Aushaengen, ohne auf die MEDIA-Broadcasts zu warten, die
+ * je nach Geraet spaet, doppelt oder (bei USB-OTG) gar nicht kommen.
+ * Zwei Quellen:
+ * <ul>
+ * <li>{@link FileObserver} (inotify) auf /storage und /mnt: meldet, wenn vold
+ * 		dort ein Verzeichnis fuer einen MountPoint anlegt oder entfernt.</li>
+ * <li>Ein Vergleich der MountPoints aus /proc/self/mounts in einem festen
+ * 		Abstand. Das eigentliche mount/umount loest kein inotify-Ereignis aus,
+ * 		und inotify auf Dateien in /proc funktioniert nicht; das Lesen der
+ * 		Datei ist aber billig und kommt ohne statfs aus.</li>
+ * </ul>
+ * Fuer jeden betroffenen MountPoint wird nur das passende Device per
+ * {@link Environment2#updateDevice(String)} aktualisiert; taucht ein
+ * unbekannter MountPoint unter einem der beobachteten Verzeichnisse auf, gibt
+ * es einen {@link Environment2#rescanDevices()}. Ereignisse, die kurz
+ * hintereinander kommen, werden wie beim {@link RescanScheduler} zusammengefasst.
+ * Wer die Aenderungen mitbekommen will, meldet sich per
+ * {@link Environment2#addDeviceListener(DeviceDiff.Listener)} an oder uebergibt
+ * einen Callback.
+ * <p>
+ * Ergaenzt den BroadcastReceiver, ersetzt ihn aber nicht: ein Wechsel von
+ * "mounted" auf "shared" z.B. aendert weder Verzeichnisse noch Mount-Tabelle
+ * an den beobachteten Stellen.
+ *
+ * @since 1.6
+ */
+public class MountWatcher {
+	/** Default-Abstand fuer den Vergleich der Mount-Tabelle in Millisekunden */
+	public static final long DEFAULT_POLL = 2000;
+	/** so lange wird nach einem Ereignis auf weitere gewartet */
+	private static final long WINDOW = 150;
+	private static final String[] DEFAULT_DIRS = { "/storage", "/mnt" };
+	private static final int MASK = FileObserver.CREATE | FileObserver.DELETE
+			| FileObserver.MOVED_FROM | FileObserver.MOVED_TO;
+
+	private final String[] mDirs;
+	private final long mPoll;
+	private final Runnable mCallback;
+	private final Handler mMain;
+	private HandlerThread mThread;
+	private volatile Handler mWorker;
+	private final ArrayList<FileObserver> mObservers = new ArrayList<FileObserver>();
+	private final HashSet<String> mPending = new HashSet<String>();
+	private Set<String> mMounts;
+
+	private final Runnable mPollTask = new Runnable() {
+		@Override public void run() {
+			Set<String> now = readMountPoints();
+			Set<String> old = mMounts;
+			mMounts = now;
+			if (old!=null && now!=null) {
+				for (String mp : now) if (!old.contains(mp)) changed(mp);
+				for (String mp : old) if (!now.contains(mp)) changed(mp);
+			}
+			Handler w = mWorker;
+			if (w!=null) w.postDelayed(this, mPoll);
+		}
+	};
+
+	private final Runnable mUpdate = new Runnable() {
+		@Override public void run() {
+			String[] paths;
+			synchronized (mPending) {
+				paths = mPending.toArray(new String[mPending.size()]);
+				mPending.clear();
+			}
+			boolean rescan = false;
+			for (String p : paths) {
+				if (!Environment2.updateDevice(p) && isWatched(p)) rescan = true;
+			}
+			if (rescan) Environment2.rescanDevices();
+			if (mCallback!=null && paths.length>0) mMain.post(mCallback);
+		}
+	};
+
+
+	/**
+	 * Beobachtet /storage und /mnt und vergleicht die Mount-Tabelle alle
+	 * {@link #DEFAULT_POLL} Millisekunden
+	 * @param callback wird nach jedem Update im Main-Thread aufgerufen; kann null sein
+	 */
+	public MountWatcher(Runnable callback) {
+		this(DEFAULT_DIRS, DEFAULT_POLL, callback);
+	}
+
+
+	/**
+	 * @param dirs die Verzeichnisse, in denen MountPoints angelegt werden
+	 * @param poll Abstand fuer den Vergleich der Mount-Tabelle in Millisekunden;
+	 * 		0 schaltet ihn ab
+	 * @param callback wird nach jedem Update im Main-Thread aufgerufen; kann null sein
+	 */
+	public MountWatcher(String[] dirs, long poll, Runnable callback) {
+		if (dirs==null) throw new IllegalArgumentException("dirs darf nicht null sein");
+		if (poll<0) throw new IllegalArgumentException("poll darf nicht negativ sein");
+		mDirs = dirs.clone();
+		mPoll = poll;
+		mCallback = callback;
+		mMain = new Handler(Looper.getMainLooper());
+	}
+
+
+	public synchronized void start() {
+		if (mThread!=null) return;
+		mThread = new HandlerThread("Environment2-watch", Process.THREAD_PRIORITY_BACKGROUND);
+		mThread.start();
+		mWorker = new Handler(mThread.getLooper());
+		for (final String dir : mDirs) {
+			if (!new File(dir).isDirectory()) continue;
+			FileObserver o = new FileObserver(dir, MASK) {
+				@Override public void onEvent(int event, String path) {
+					if (path!=null) changed(dir.endsWith("/") ? dir+path : dir+"/"+path);
+				}
+			};
+			o.startWatching();
+			mObservers.add(o);
+		}
+		if (mPoll>0) {
+			mMounts = null;
+			mWorker.post(mPollTask);
+		}
+	}
+
+
+	public synchronized void stop() {
+		if (mThread==null) return;
+		for (FileObserver o : mObservers) o.stopWatching();
+		mObservers.clear();
+		mWorker.removeCallbacks(mPollTask);
+		mWorker.removeCallbacks(mUpdate);
+		mWorker = null;
+		mThread.quit();
+		mThread = null;
+		synchronized (mPending) { mPending.clear(); }
+	}
+
+
+	/** merkt den Pfad vor und startet das Zeitfenster, falls noch keins laeuft */
+	private void changed(String path) {
+		Handler w = mWorker;
+		if (w==null) return;
+		synchronized (mPending) {
+			if (mPending.add(path) && mPending.size()==1) w.postDelayed(mUpdate, WINDOW);
+		}
+	}
+
+
+	/** @return true, wenn path direkt in einem der beobachteten Verzeichnisse liegt */
+	private boolean isWatched(String path) {
+		String parent = new File(path).getParent();
+		for (String dir : mDirs) {
+			if (new File(dir).getPath().equals(parent)) return true;
+		}
+		return false;
+	}
+
+
+	/** @return die MountPoints aus /proc/self/mounts oder null, falls nicht lesbar */
+	static Set<String> readMountPoints() {
+		List<MountTable.Entry> entries = MountTable.read();
+		if (entries==null) return null;
+		HashSet<String> set = new HashSet<String>();
+		for (MountTable.Entry e : entries) set.add(e.mountPoint);
+		return set;
+	}
+}
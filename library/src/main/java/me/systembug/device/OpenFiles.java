@@ -0,0 +1,307 @@
+package me.systembug.device;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.util.Log;
+
+/**
+ * Merkt sich je Device die Streams und Channels, die ueber die Fabrikmethoden
+ * hier geoeffnet wurden, und schliesst sie, sobald das Device ausgeworfen wird.
+ * <p>
+ * Beim Auswerfen einer Karte schickt das System erst ACTION_MEDIA_EJECT und
+ * wartet dann, bis keine Datei auf dem Device mehr offen ist; bleibt eine
+ * offen, haengt das Aushaengen, bis vold den Prozess beendet, und was noch im
+ * Puffer eines Streams lag, ist verloren. Der von
+ * {@link Environment2#registerRescanBroadcastReceiver(android.content.Context, Runnable)}
+ * angelegte Receiver ruft deshalb {@link #onMediaIntent(Intent)} auf: alle
+ * Handles auf dem Device werden parallel geleert und geschlossen, zusammen
+ * hoechstens {@link #DEFAULT_DEADLINE} Millisekunden lang. Bei
+ * MEDIA_BAD_REMOVAL ist die Karte schon weg; dann wird nur noch geschlossen,
+ * damit die Handles nicht auf ein nicht mehr vorhandenes Device zeigen.
+ * <p>
+ * Nach dem Schliessen werfen weitere Zugriffe auf die Handles eine IOException,
+ * wie bei jedem geschlossenen Stream. Dateien, die auf keinem bekannten Device
+ * liegen, werden normal geoeffnet, aber nicht erfasst.
+ *
+ * @since 1.6
+ */
+public final class OpenFiles {
+	/** Default fuer die Zeit, die {@link #onMediaIntent(Intent)} zum Schliessen bleibt, in Millisekunden */
+	public static final long DEFAULT_DEADLINE = 2000;
+	private static final String TAG = "Environment2";
+	private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+
+	/** ein erfasster Handle */
+	private interface Handle {
+		/** leert Puffer und schliesst; wird im Thread-Pool aufgerufen */
+		void release() throws IOException;
+		/** false, wenn der Handle schon anderweitig geschlossen wurde */
+		boolean isOpen();
+	}
+
+	private static final class Output extends BufferedOutputStream implements Handle {
+		private final String mKey;
+		private volatile boolean mClosed;
+
+		Output(String key, FileOutputStream out, int size) {
+			super(out, size);
+			mKey = key;
+		}
+
+		@Override public void close() throws IOException {
+			mClosed = true;
+			try {
+				super.close();
+			} finally {
+				unregister(mKey, this);
+			}
+		}
+
+		@Override public void release() throws IOException {
+			// flush ist synchronized, wartet also auf einen laufenden write
+			try {
+				flush();
+			} finally {
+				close();
+			}
+		}
+
+		@Override public boolean isOpen() { return !mClosed; }
+	}
+
+	private static final class Input extends FileInputStream implements Handle {
+		private final String mKey;
+		private volatile boolean mClosed;
+
+		Input(String key, File f) throws IOException {
+			super(f);
+			mKey = key;
+		}
+
+		@Override public void close() throws IOException {
+			mClosed = true;
+			try {
+				super.close();
+			} finally {
+				unregister(mKey, this);
+			}
+		}
+
+		@Override public void release() throws IOException { close(); }
+		@Override public boolean isOpen() { return !mClosed; }
+	}
+
+	/**
+	 * FileChannel laesst sich nicht sinnvoll ableiten, wohl aber die Datei
+	 * dahinter: FileChannel.close() schliesst auch sie. Was trotzdem
+	 * geschlossen, aber nicht abgemeldet ist, entfernt {@link OpenFiles#register(String, Handle)}.
+	 */
+	private static final class Channel extends RandomAccessFile implements Handle {
+		private final String mKey;
+
+		Channel(String key, File f, String mode) throws IOException {
+			super(f, mode);
+			mKey = key;
+		}
+
+		@Override public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				unregister(mKey, this);
+			}
+		}
+
+		@Override public void release() throws IOException { close(); }
+		@Override public boolean isOpen() { return getChannel().isOpen(); }
+	}
+
+	private static final ConcurrentHashMap<String, Set<Handle>> mHandles = new ConcurrentHashMap<String, Set<Handle>>();
+	private static ExecutorService mExecutor;
+
+	private OpenFiles() { }
+
+
+	/**
+	 * Oeffnet f zum Schreiben, gepuffert mit {@link IoProfile#getBufferSize()}
+	 * des Devices
+	 * @param append true, um an eine vorhandene Datei anzuhaengen
+	 */
+	public static OutputStream openOutputStream(File f, boolean append) throws IOException {
+		Device d = device(f);
+		FileOutputStream out = new FileOutputStream(f, append);
+		if (d==null) return out;
+		return register(d.getMountPoint(), new Output(d.getMountPoint(), out, d.getIoProfile().getBufferSize()));
+	}
+
+
+	/** Oeffnet f zum Lesen */
+	public static InputStream openInputStream(File f) throws IOException {
+		Device d = device(f);
+		if (d==null) return new FileInputStream(f);
+		return register(d.getMountPoint(), new Input(d.getMountPoint(), f));
+	}
+
+
+	/**
+	 * Oeffnet einen FileChannel auf f
+	 * @param mode wie bei {@link RandomAccessFile#RandomAccessFile(File, String)}, also "r", "rw" ...
+	 */
+	public static FileChannel openChannel(File f, String mode) throws IOException {
+		Device d = device(f);
+		if (d==null) return new RandomAccessFile(f, mode).getChannel();
+		return register(d.getMountPoint(), new Channel(d.getMountPoint(), f, mode)).getChannel();
+	}
+
+
+	/** @return die Zahl der noch offenen, erfassten Handles auf dem Device */
+	public static int getOpenCount(Device d) {
+		Set<Handle> set = mHandles.get(d.getMountPoint());
+		if (set==null) return 0;
+		int n = 0;
+		for (Handle h : set) if (h.isOpen()) n++;
+		return n;
+	}
+
+
+	/**
+	 * Wertet einen MEDIA-Broadcast aus: bei EJECT, BAD_REMOVAL, UNMOUNTED und
+	 * REMOVED werden alle Handles auf dem betroffenen Device im Hintergrund
+	 * per {@link #release(String, long)} geschlossen. Wer einen eigenen
+	 * Receiver schreibt, ruft das in dessen onReceive auf.
+	 * @return true, wenn der Intent ein Schliessen ausgeloest hat
+	 */
+	public static boolean onMediaIntent(Intent intent) {
+		String action = intent.getAction();
+		if (!Intent.ACTION_MEDIA_EJECT.equals(action) && !Intent.ACTION_MEDIA_BAD_REMOVAL.equals(action)
+				&& !Intent.ACTION_MEDIA_UNMOUNTED.equals(action) && !Intent.ACTION_MEDIA_REMOVED.equals(action))
+			return false;
+		Uri data = intent.getData();
+		final String path = data==null ? null : data.getPath();
+		if (path==null || mHandles.isEmpty()) return false;
+		executor().execute(new Runnable() {
+			@Override public void run() { release(path, DEFAULT_DEADLINE); }
+		});
+		return true;
+	}
+
+
+	/** @see #release(String, long) */
+	public static int release(Device d, long deadline) {
+		return release(d.getMountPoint(), deadline);
+	}
+
+
+	/**
+	 * Leert und schliesst alle erfassten Handles auf dem MountPoint (und auf
+	 * Devices darunter) parallel. Blockiert hoechstens deadline Millisekunden;
+	 * Handles, die bis dahin nicht geschlossen sind, werden per Interrupt
+	 * abgebrochen und bleiben erfasst.
+	 * @return die Zahl der geschlossenen Handles
+	 */
+	public static int release(String mountPoint, long deadline) {
+		if (mountPoint==null) throw new IllegalArgumentException("mountPoint darf nicht null sein");
+		String prefix = mountPoint.endsWith("/") ? mountPoint : mountPoint+"/";
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (Map.Entry<String, Set<Handle>> e : mHandles.entrySet()) {
+			String key = e.getKey();
+			if (!key.equals(mountPoint) && !key.startsWith(prefix)) continue;
+			for (final Handle h : e.getValue()) {
+				if (!h.isOpen()) {
+					e.getValue().remove(h);
+					continue;
+				}
+				tasks.add(new Callable<Void>() {
+					@Override public Void call() throws IOException {
+						h.release();
+						return null;
+					}
+				});
+			}
+		}
+		if (tasks.isEmpty()) return 0;
+		long t = Metrics.start();
+		int closed = 0;
+		try {
+			for (Future<Void> f : executor().invokeAll(tasks, deadline, TimeUnit.MILLISECONDS)) {
+				if (f.isCancelled()) continue;
+				try {
+					f.get();
+				} catch (Exception e) {
+					// Karte schon weg (BAD_REMOVAL): flush schlaegt fehl, geschlossen ist trotzdem
+					if (DEBUG) Log.d(TAG, "release: "+e);
+				}
+				closed++;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Metrics.stop(Metrics.RELEASE, t);
+		if (DEBUG) Log.d(TAG, mountPoint+": "+closed+" von "+tasks.size()+" geschlossen");
+		return closed;
+	}
+
+
+	private static Device device(File f) {
+		if (f==null) throw new IllegalArgumentException("f darf nicht null sein");
+		return Environment2.deviceForPath(f);
+	}
+
+
+	private static <T extends Handle> T register(String key, T h) {
+		Set<Handle> set = mHandles.get(key);
+		if (set==null) {
+			Set<Handle> n = Collections.newSetFromMap(new ConcurrentHashMap<Handle, Boolean>());
+			set = mHandles.putIfAbsent(key, n);
+			if (set==null) set = n;
+		}
+		// geschlossene Handles, die sich nicht abgemeldet haben
+		for (Handle o : set) if (!o.isOpen()) set.remove(o);
+		set.add(h);
+		return h;
+	}
+
+
+	private static void unregister(String key, Handle h) {
+		Set<Handle> set = mHandles.get(key);
+		if (set!=null) set.remove(h);
+	}
+
+
+	private static synchronized ExecutorService executor() {
+		if (mExecutor==null) {
+			final AtomicInteger count = new AtomicInteger();
+			mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "OpenFiles-"+count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return mExecutor;
+	}
+}
@@ -0,0 +1,163 @@
+package me.systembug.device;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Auswahl eines Devices fuer einen Schreibvorgang bekannter Groesse, siehe
+ * {@link Environment2#chooseDevice(long, Policy)} und
+ * {@link Environment2#reserveSpace(long, Policy)}.
+ * <p>
+ * Gerechnet wird mit den zwischengespeicherten Groessen aus {@link SpaceCache}
+ * (also hoechstens ein statfs je Device und TTL) abzueglich der Bytes, die
+ * noch offene {@link Reservation}s belegen. Damit landen mehrere gleichzeitig
+ * gestartete Downloads nicht alle auf demselben Device, nur weil dort im
+ * Moment des Starts am meisten frei war.
+ * <p>
+ * Reservierungen gelten je Dateisystem: Ist der externe Speicher emuliert
+ * ({@link Environment2#isExternalStorageEmulated()}), teilen sich /data und
+ * der primaere externe Speicher denselben Platz, und eine Reservierung auf
+ * dem einen zaehlt auch fuer das andere.
+ *
+ * @since 1.6
+ */
+public final class Placement {
+
+	/** Nach welchen Regeln unter den passenden Devices gewaehlt wird */
+	public enum Policy {
+		/** das mit dem meisten freien Speicher */
+		MOST_FREE,
+		/** entfernbare Devices (SD-Karte, USB) zuerst, darunter das mit dem meisten Platz */
+		PREFER_REMOVABLE,
+		/** fest eingebaute Devices zuerst, darunter das mit dem meisten Platz */
+		PREFER_INTERNAL,
+		/** das mit der hoechsten gemessenen Schreibrate ({@link Device#getPerformance()});
+		 * nicht gemessene danach, nach freiem Platz */
+		FASTEST
+	}
+
+
+	/**
+	 * Fuer einen laufenden Schreibvorgang vorgemerkter Platz. Muss nach dem
+	 * Schreiben (oder Abbruch) per {@link #release()} freigegeben werden, am
+	 * besten in einem finally-Block.
+	 */
+	public static final class Reservation {
+		private final Device mDevice;
+		private final long mBytes;
+		private final AtomicBoolean mReleased = new AtomicBoolean();
+
+		Reservation(Device d, long bytes) {
+			mDevice = d;
+			mBytes = bytes;
+		}
+
+		public Device getDevice() { return mDevice; }
+		public long getBytes() { return mBytes; }
+
+		/** gibt den Platz wieder frei; weitere Aufrufe tun nichts */
+		public void release() {
+			if (mReleased.compareAndSet(false, true)) reserved(key(mDevice)).addAndGet(-mBytes);
+		}
+	}
+
+	private static final ConcurrentHashMap<String, AtomicLong> mReserved = new ConcurrentHashMap<String, AtomicLong>();
+
+	private Placement() { }
+
+
+	/**
+	 * @return die Summe der offenen Reservierungen auf dem Device in Bytes
+	 */
+	public static long getReserved(Device d) {
+		AtomicLong r = mReserved.get(key(d));
+		return r==null ? 0 : r.get();
+	}
+
+
+	/**
+	 * @return der freie Speicher laut Cache abzueglich der offenen Reservierungen;
+	 * 		-1, falls das Device nicht verfuegbar ist
+	 */
+	static long getAvailable(Device d) {
+		if (!d.isAvailable()) return -1;
+		Size s = d.getSize();
+		if (s==null) return -1;
+		return s.getStats().getAvailable() - getReserved(d);
+	}
+
+
+	static Device choose(List<Device> devices, long bytes, Policy p) {
+		Device best = null;
+		long bestFree = 0;
+		for (Device d : devices) {
+			if (!d.isWriteable()) continue;
+			long free = getAvailable(d);
+			if (free<bytes) continue;
+			if (best==null || compare(d, free, best, bestFree, p)<0) {
+				best = d;
+				bestFree = free;
+			}
+		}
+		return best;
+	}
+
+
+	/** wie choose, merkt aber den Platz in einem Schritt vor */
+	static synchronized Reservation reserve(List<Device> devices, long bytes, Policy p) {
+		Device d = choose(devices, bytes, p);
+		if (d==null) return null;
+		reserved(key(d)).addAndGet(bytes);
+		return new Reservation(d, bytes);
+	}
+
+
+	/** @return negativ, wenn a besser passt als b */
+	private static int compare(Device a, long freeA, Device b, long freeB, Policy p) {
+		switch (p) {
+		case PREFER_REMOVABLE:
+			if (a.isRemovable()!=b.isRemovable()) return a.isRemovable() ? -1 : 1;
+			break;
+		case PREFER_INTERNAL:
+			if (a.isRemovable()!=b.isRemovable()) return a.isRemovable() ? 1 : -1;
+			break;
+		case FASTEST:
+			DevicePerformance pa = a.getPerformance(), pb = b.getPerformance();
+			if (pa!=null || pb!=null) {
+				if (pa==null) return 1;
+				if (pb==null) return -1;
+				int c = DevicePerformance.BY_WRITE_SPEED.compare(pa, pb);
+				if (c!=0) return c;
+			}
+			break;
+		default:
+			break;
+		}
+		return freeA>freeB ? -1 : freeA==freeB ? 0 : 1;
+	}
+
+
+	/**
+	 * @return der Schluessel fuer die Reservierungen: der MountPoint, bei 
+	 * 		emuliertem externen Speicher fuer /data der des primaeren Speichers
+	 */
+	private static String key(Device d) {
+		if (Environment2.isExternalStorageEmulated() 
+				&& d.getMountPoint().equals(Environment2.getInternalStorage().getMountPoint()))
+			return Environment2.getPrimaryExternalStorage().getMountPoint();
+		return d.getMountPoint();
+	}
+
+
+	private static AtomicLong reserved(String mountPoint) {
+		AtomicLong r = mReserved.get(mountPoint);
+		if (r==null) {
+			AtomicLong n = new AtomicLong();
+			r = mReserved.putIfAbsent(mountPoint, n);
+			if (r==null) r = n;
+		}
+		return r;
+	}
+}
@@ -0,0 +1,57 @@
+package me.systembug.device;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Der von {@link Environment2#registerRescanBroadcastReceiver(Context, Runnable, long)}
+ * angelegte Receiver. Arbeitet er mit Zeitfenster, kann nach dem Abmelden noch
+ * ein Update ausstehen, das dann im Hintergrund laeuft und den Runnable im 
+ * Main-Thread aufruft, womoeglich in einer schon beendeten Activity. Deshalb
+ * gehoert zum Abmelden auch {@link #cancel()}: <pre>
+	unregisterReceiver(mRescanReceiver);
+	mRescanReceiver.cancel();</pre>
+ * 
+ * @since 1.6
+ */
+public class RescanReceiver extends BroadcastReceiver {
+	private static final String TAG = "Environment2";
+	private static final boolean DEBUG = Log.isLoggable(TAG, Log.DEBUG);
+	
+	private final Runnable mCallback;
+	private final RescanScheduler mScheduler;
+	
+	/**
+	 * @param callback wird nach jedem Update aufgerufen; kann null sein
+	 * @param window das Zeitfenster in Millisekunden; bei 0 wird sofort im 
+	 * 		Main-Thread aktualisiert
+	 */
+	RescanReceiver(Runnable callback, long window) {
+		mCallback = callback;
+		mScheduler = window>0 ? new RescanScheduler(window, callback) : null;
+	}
+	
+	
+	@Override 
+	public void onReceive(Context context, Intent intent) {
+		if (DEBUG) Log.i(TAG, "Storage: "+intent.getAction()+"-"+intent.getData());
+		OpenFiles.onMediaIntent(intent);
+		if (mScheduler!=null) 
+			mScheduler.schedule();
+		else {
+			Environment2.updateDevices();
+			if (mCallback!=null) mCallback.run();
+		}
+	}
+	
+	
+	/**
+	 * Verwirft ein noch ausstehendes Update samt Callback; zusammen mit 
+	 * unregisterReceiver aufrufen
+	 */
+	public void cancel() {
+		if (mScheduler!=null) mScheduler.cancel();
+	}
+}
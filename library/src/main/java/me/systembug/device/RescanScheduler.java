@@ -0,0 +1,114 @@
+package me.systembug.device;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Fasst die Broadcasts zusammen, die beim Einstecken oder Entnehmen einer
+ * Karte kurz hintereinander eintreffen (MEDIA_MOUNTED, MEDIA_SHARED, 
+ * MEDIA_REMOVED ...). Jeder Aufruf von {@link #schedule()} verschiebt das 
+ * Update um das eingestellte Zeitfenster; erst wenn es ruhig geworden ist 
+ * (spaetestens nach dem Vierfachen des Fensters), wird einmal 
+ * {@link Environment2#updateDevices()} in einem Hintergrund-Thread aufgerufen 
+ * und danach der Callback im Main-Thread ausgefuehrt.
+ * <p>
+ * Wird von {@link Environment2#registerRescanBroadcastReceiver(android.content.Context, Runnable, long)}
+ * benutzt, kann aber auch in einem eigenen BroadcastReceiver eingesetzt werden: <pre>
+	mScheduler = new RescanScheduler(RescanScheduler.DEFAULT_WINDOW, callback);
+	...
+	public void onReceive(Context context, Intent intent) { mScheduler.schedule(); }</pre>
+ * 
+ * @since 1.6
+ */
+public class RescanScheduler {
+	/** Default-Zeitfenster in Millisekunden */
+	public static final long DEFAULT_WINDOW = 300;
+	private static final int MAX_WINDOWS = 4;
+	
+	private static Handler sWorker;
+	
+	private final Handler mWorker;
+	private final Handler mMain;
+	private final Runnable mCallback;
+	private final long mWindow;
+	private boolean mPending;
+	private long mFirstRequest;
+	/** wird von {@link #cancel()} hochgezaehlt; ein Update aus einer frueheren Runde ruft den Callback nicht mehr auf */
+	private int mRound;
+	
+	private final Runnable mUpdate = new Runnable() {
+		@Override public void run() {
+			final int round;
+			synchronized (RescanScheduler.this) { 
+				mPending = false;
+				round = mRound;
+			}
+			Environment2.updateDevices();
+			if (mCallback!=null) mMain.post(new Runnable() {
+				@Override public void run() {
+					synchronized (RescanScheduler.this) {
+						if (round!=mRound) return;
+					}
+					mCallback.run();
+				}
+			});
+		}
+	};
+	
+	
+	/**
+	 * @param window das Zeitfenster in Millisekunden, in dem weitere Aufrufe von 
+	 * 		{@link #schedule()} zusammengefasst werden
+	 * @param callback wird nach jedem Update im Main-Thread aufgerufen; kann null sein
+	 */
+	public RescanScheduler(long window, Runnable callback) {
+		if (window<0) throw new IllegalArgumentException("window darf nicht negativ sein");
+		mWindow = window;
+		mCallback = callback;
+		mWorker = getWorker();
+		mMain = new Handler(Looper.getMainLooper());
+	}
+	
+	
+	private static synchronized Handler getWorker() {
+		if (sWorker==null) {
+			HandlerThread t = new HandlerThread("Environment2-rescan", Process.THREAD_PRIORITY_BACKGROUND);
+			t.start();
+			sWorker = new Handler(t.getLooper());
+		}
+		return sWorker;
+	}
+	
+	
+	/**
+	 * Fordert ein Update an. Kehrt sofort zurueck; das Update laeuft nach Ablauf
+	 * des Zeitfensters im Hintergrund.
+	 */
+	public synchronized void schedule() {
+		long now = SystemClock.uptimeMillis();
+		long delay = mWindow;
+		if (mPending) {
+			mWorker.removeCallbacks(mUpdate);
+			// nicht endlos verschieben, falls die Broadcasts nicht aufhoeren
+			delay = Math.max(0, Math.min(mWindow, mFirstRequest + MAX_WINDOWS*mWindow - now));
+		} else {
+			mPending = true;
+			mFirstRequest = now;
+		}
+		mWorker.postDelayed(mUpdate, delay);
+	}
+	
+	
+	/**
+	 * Verwirft ein noch ausstehendes Update, z.B. beim Abmelden des Receivers;
+	 * laeuft es gerade, wird danach zumindest der Callback nicht mehr aufgerufen
+	 */
+	public synchronized void cancel() {
+		mWorker.removeCallbacks(mUpdate);
+		mPending = false;
+		mRound++;
+	}
+}
@@ -2,9 +2,7 @@ package me.systembug.device;
 
 import java.io.File;
 
-import android.annotation.SuppressLint;
-import android.os.Build;
-import android.os.StatFs;
+import android.os.SystemClock;
 import android.util.Pair;
 
 /**
@@ -15,8 +13,15 @@ import android.util.Pair;
  * <li>first: freier Speicher (free), ermittelt per getUsableSpace
  * <li>secondary: Gesamtspeicher (size), ermittelt per getTotalSpace
  * </ul>
- * Der Constructor der Klasse ist privat, erzeugt wird ein Objekt ?ber die statische
- * Funktion getSpace(File).
+ * Der Constructor der Klasse ist nur im Paket sichtbar, erzeugt wird ein Objekt ?ber die statische
+ * Funktion getSpace(File). Jedes Objekt merkt sich, wann es ermittelt wurde 
+ * ({@link #getAge()}); zwischengespeichert werden die Werte in {@link SpaceCache}.
+ * <p>
+ * Seit Version 1.6 ist Size nur noch eine Sicht auf ein {@link StorageStats},
+ * das alle Werte eines statfs-Aufrufs in primitiven Feldern enthaelt 
+ * ({@link #getStats()}); first und second bleiben fuer bestehenden Code erhalten.
+ * Weil Pair sie im Constructor setzt, kostet jedes Size-Objekt trotzdem zwei
+ * Long. Wer haeufig misst, nimmt besser direkt ein wiederverwendetes StorageStats.
  * 
  * @see Environment2
  * @author	J?rg Wirtgen (jow@ct.de)
@@ -24,7 +29,40 @@ import android.util.Pair;
  */
 public class Size extends Pair<Long,Long> {
 	
-	private Size(long free, long size) { super(free, size); }
+	private final StorageStats mStats;
+	/** die {@link SpaceCache#getGeneration(String)} bei der Messung; 0 ausserhalb des SpaceCache */
+	volatile int mGeneration;
+	
+	/** 
+	 * @param stats wird uebernommen und eingefroren, darf also danach nicht 
+	 * 		mehr anderweitig benutzt werden
+	 */
+	Size(StorageStats stats) { 
+		super(stats.getAvailable(), stats.getTotal()); 
+		mStats = stats.freeze();
+	}
+
+	
+	/**
+	 * @return alle Werte der Messung; das Objekt ist unveraenderlich
+	 * @since 1.6
+	 */
+	public StorageStats getStats() { return mStats; }
+	
+	
+	/**
+	 * @return der Zeitpunkt der Messung als {@link SystemClock#elapsedRealtime()}
+	 * @since 1.6
+	 */
+	public long getTime() { return mStats.getTime(); }
+	
+	
+	/**
+	 * @return das Alter der Messwerte in Millisekunden
+	 * @since 1.6
+	 */
+	public long getAge() { return mStats.getAge(); }
+	
 
 	/**
 	 * Versucht zu erraten, wie gro? das Speichermedium ist, auf dem das Size-Objekt
@@ -35,38 +73,22 @@ public class Size extends Pair<Long,Long> {
 	 * 		also bsp. 16 GB f?r 14 GB. Falls second 0 ist, kommt 1 zur?ck.
 	 */
 	public long guessSize() {
-		if (second==0) return 0;
-		long g;
-		if (second>1024*1024*1024) g = 1024*1024*1024;
-		else if (second>1024*1024) g = 1024*1024;
-		else g = 1;
-		while (second>g) g *= 2;
-		return g;
+		return mStats.guessSize();
 	}
 
 	
 	/**
-	 * Ermittelt die Gr??e und den freien Speicher des ?bergebenen {@link File}. Ab 
-	 * Android 2.3 werden dazu die File-Methoden {@link File#getUsableSpace()} und 
-	 * {@link File#getTotalSpace()} benutzt, bei ?lteren Android-Versionen wird ein
-	 * Hilfsobjekt {@link StatFs} erzeugt.
+	 * Ermittelt die Gr??e und den freien Speicher des ?bergebenen {@link File}
+	 * mit einem statfs-Aufruf, siehe {@link StorageStats#sample(String)}. 
 	 * 
 	 * @param f das Verzeichnis, dessen Gr??e ermittelt werden soll
 	 * @return ein {@link Pair}, das Gr??e und freier Speicher der Partition enth?lt, 
 	 * 		auf die f zeigt oder (0,0), falls dabei ein Fehler aufgetreten ist oder f null ist.
 	 */
-	@SuppressLint("NewApi")
 	public static Size getSpace(File f) {
-		if (f!=null) try {
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
-				// Gingerbread hat Gr??e/freier Platz im File
-				return new Size(f.getUsableSpace(), f.getTotalSpace());
-			} else {
-				// vor Gingerbread muss der StatFs-Krams ran; wichtig ist die long-Wandlung
-				StatFs fs = new StatFs(f.getAbsolutePath());
-				return new Size((long)fs.getAvailableBlocks()*fs.getBlockSize(), (long)fs.getBlockCount()*fs.getBlockSize());
-			}
-		} catch (Exception e) { }
-		return new Size((long)0, (long)0);
+		StorageStats s = new StorageStats();
+		if (f!=null) s.sample(f.getAbsolutePath());
+		else s.set(0, 0, 0, 0, 0, 0, SystemClock.elapsedRealtime());
+		return new Size(s);
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package me.systembug.device;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Speichert einen {@link DeviceSnapshot} samt Zustand der Devices (verfuegbar,
+ * beschreibbar, letzte Groesse) in einer kleinen Binaerdatei und liest ihn
+ * wieder, ohne dabei vold.fstab, statfs oder die MountPoints anzufassen.
+ * <p>
+ * Ob der gespeicherte Stand noch stimmt, verraten zwei Werte: die Boot-ID des
+ * Kernels (nach einem Neustart ist alles ungueltig, auch die Zeitstempel der
+ * {@link Size}-Objekte) und ein Hash ueber /proc/self/mounts, der sich bei
+ * jedem Ein- und Aushaengen aendert.
+ * <p>
+ * Geschrieben wird per {@link #saveAsync(File, DeviceSnapshot)} in einem
+ * eigenen Thread, nacheinander und nur der jeweils neueste Stand: Updates
+ * kommen oft aus dem Main-Thread bzw. aus Broadcasts und sollen dort keine
+ * Platten-I/O ausloesen.
+ *
+ * @see Environment2#restoreSnapshot(android.content.Context)
+ * @since 1.6
+ */
+final class SnapshotStore {
+	private static final int MAGIC = 0x4532534e; // "E2SN"
+	private static final int VERSION = 2;
+	private static final String BOOT_ID = "/proc/sys/kernel/random/boot_id";
+	private static final String MOUNTS = "/proc/self/mounts";
+
+	/** ein gelesener Snapshot mit dem Hash, gegen den er geprueft werden muss */
+	static final class Stored {
+		final DeviceSnapshot mSnapshot;
+		final long mMountsHash;
+		Stored(DeviceSnapshot s, long mountsHash) {
+			mSnapshot = s;
+			mMountsHash = mountsHash;
+		}
+	}
+
+	private static ExecutorService mExecutor;
+	/** der als naechstes zu schreibende Stand; null, wenn keiner aussteht */
+	private static File mPendingFile;
+	private static DeviceSnapshot mPending;
+
+	private SnapshotStore() { }
+
+
+	/**
+	 * @return der gespeicherte Snapshot oder null, falls es keinen gibt, er
+	 * 		kaputt ist oder aus einem anderen Boot stammt
+	 */
+	static Stored load(File f, Device internal) {
+		if (!f.isFile()) return null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 4096));
+			try {
+				if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return null;
+				String boot = readBootId();
+				if (boot.length()==0 || !in.readUTF().equals(boot)) return null;
+				long mountsHash = in.readLong();
+				boolean emulated = in.readBoolean();
+				DeviceExternal primary = new DeviceExternal(in.readUTF(), in.readBoolean(), in.readUTF(), readSize(in));
+				int n = in.readInt();
+				ArrayList<DeviceDiv> devices = new ArrayList<DeviceDiv>(n);
+				for (int i=0; i<n; i++) {
+					String label = in.readUTF(), mountPoint = in.readUTF(), name = in.readUTF();
+					boolean available = in.readBoolean(), writeable = in.readBoolean();
+					devices.add(new DeviceDiv(label, mountPoint, primary, name, available, writeable, readSize(in)));
+				}
+				int secondary = in.readInt();
+				return new Stored(new DeviceSnapshot(devices, primary,
+						secondary>=0 && secondary<n ? devices.get(secondary) : null, emulated, internal), mountsHash);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * Schreibt den Snapshot im Hintergrund. Kommt vor dem Schreiben ein neuerer
+	 * Stand, wird nur dieser geschrieben.
+	 */
+	static void saveAsync(File f, DeviceSnapshot s) {
+		synchronized (SnapshotStore.class) {
+			boolean scheduled = mPending!=null;
+			mPendingFile = f;
+			mPending = s;
+			if (scheduled) return;
+			if (mExecutor==null) {
+				mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SnapshotStore");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			}
+		}
+		mExecutor.execute(new Runnable() {
+			@Override public void run() {
+				File f;
+				DeviceSnapshot s;
+				synchronized (SnapshotStore.class) {
+					f = mPendingFile;
+					s = mPending;
+					mPendingFile = null;
+					mPending = null;
+				}
+				if (s!=null) save(f, s);
+			}
+		});
+	}
+
+
+	/**
+	 * Schreibt den Snapshot; Fehler werden ignoriert, dann wird beim naechsten
+	 * Start eben wieder gescannt. Laeuft im Thread des Aufrufers; parallele
+	 * Aufrufe werden nacheinander ausgefuehrt, weil sie dieselbe Temp-Datei
+	 * benutzen.
+	 */
+	static synchronized void save(File f, DeviceSnapshot s) {
+		File tmp = new File(f.getPath()+".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 4096));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(readBootId());
+				out.writeLong(hashMounts());
+				out.writeBoolean(s.mExternalEmulated);
+				DeviceExternal p = s.mPrimary;
+				out.writeUTF(p.getMountPoint());
+				out.writeBoolean(p.isRemovable());
+				out.writeUTF(p.getState()==null ? "" : p.getState());
+				writeSize(out, p.mSize);
+				out.writeInt(s.mDevices.size());
+				for (DeviceDiv d : s.mDevices) {
+					out.writeUTF(d.getLabel()==null ? "" : d.getLabel());
+					out.writeUTF(d.getMountPoint());
+					out.writeUTF(d.getName());
+					out.writeBoolean(d.isAvailable());
+					out.writeBoolean(d.isWriteable());
+					writeSize(out, d.mSize);
+				}
+				out.writeInt(s.mSecondary==null ? -1 : s.mDevices.indexOf(s.mSecondary));
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(f)) tmp.delete();
+		} catch (IOException e) {
+			tmp.delete();
+		}
+	}
+
+
+	private static Size readSize(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) return null;
+		StorageStats s = new StorageStats();
+		s.set(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+		return new Size(s);
+	}
+
+
+	private static void writeSize(DataOutputStream out, Size s) throws IOException {
+		out.writeBoolean(s!=null);
+		if (s==null) return;
+		StorageStats st = s.getStats();
+		out.writeLong(st.getTotal());
+		out.writeLong(st.getFree());
+		out.writeLong(st.getAvailable());
+		out.writeLong(st.getBlockSize());
+		out.writeLong(st.getFiles());
+		out.writeLong(st.getFreeFiles());
+		out.writeLong(st.getTime());
+	}
+
+
+	/** @return die Boot-ID oder "", falls nicht lesbar (dann wird nie ein Snapshot geladen) */
+	static String readBootId() {
+		try {
+			FileReader r = new FileReader(BOOT_ID);
+			try {
+				char[] buf = new char[64];
+				int n = r.read(buf);
+				return n>0 ? new String(buf, 0, n).trim() : "";
+			} finally {
+				r.close();
+			}
+		} catch (IOException e) {
+			return "";
+		}
+	}
+
+
+	/** FNV-1a ueber den Inhalt von /proc/self/mounts; 0, falls nicht lesbar */
+	static long hashMounts() {
+		long h = 0xcbf29ce484222325L;
+		try {
+			FileReader r = new FileReader(MOUNTS);
+			try {
+				char[] buf = new char[4096];
+				int n;
+				while ((n = r.read(buf))>0) {
+					for (int i=0; i<n; i++) {
+						h ^= buf[i];
+						h *= 0x100000001b3L;
+					}
+				}
+			} finally {
+				r.close();
+			}
+		} catch (IOException e) {
+			return 0;
+		}
+		return h;
+	}
+}
@@ -0,0 +1,108 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Zwischenspeicher fuer die per {@link Size#getSpace(File)} ermittelten Werte,
+ * damit nicht jede Abfrage zwei statfs-Aufrufe kostet. Die Eintraege liegen je
+ * MountPoint vor und gelten fuer {@link #getTtl()} Millisekunden; danach 
+ * wird beim naechsten Zugriff neu gemessen.
+ * <p>
+ * Geleert wird der Cache von {@link Environment2#updateDevices()}, also bei jedem
+ * An- und Abmelden eines Devices. Wer selbst groessere Datenmengen schreibt oder
+ * loescht, sollte danach {@link #invalidate(Device)} aufrufen. Das wirkt auch auf
+ * den Wert, den sich das Device selbst merkt: {@link Device#getSize()} vergleicht
+ * die Generation seines Messwerts mit {@link #getGeneration(String)} und misst 
+ * nach einem invalidate neu, auch wenn die TTL noch nicht abgelaufen ist.
+ * 
+ * @see Device#getSize()
+ * @since 1.6
+ */
+public final class SpaceCache {
+	public static final long DEFAULT_TTL = 2000;
+	
+	private static final ConcurrentHashMap<String, Size> mEntries = new ConcurrentHashMap<String, Size>();
+	private static volatile long mTtl = DEFAULT_TTL;
+	/** zaehlt {@link #invalidateAll()}; zusammen mit mInvalidations die Generation eines MountPoints */
+	private static volatile int mEpoch;
+	private static final ConcurrentHashMap<String, AtomicInteger> mInvalidations = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private SpaceCache() { }
+	
+	
+	/**
+	 * @param ttl die Gueltigkeit eines Messwerts in Millisekunden; 0 schaltet
+	 * 		den Cache praktisch ab
+	 */
+	public static void setTtl(long ttl) {
+		if (ttl<0) throw new IllegalArgumentException("ttl darf nicht negativ sein");
+		mTtl = ttl;
+	}
+	
+	
+	public static long getTtl() { return mTtl; }
+	
+	
+	/**
+	 * Liefert Groesse und freien Speicher des MountPoints, aus dem Cache, falls 
+	 * der Wert juenger als die TTL ist, sonst neu gemessen.
+	 * @param mountPoint der Pfad des Devices
+	 * @return ein {@link Size}, dessen Alter per {@link Size#getAge()} abgefragt werden kann
+	 */
+	public static Size get(String mountPoint) {
+		Size s = mEntries.get(mountPoint);
+		if (s==null || s.getAge()>=mTtl) {
+			Metrics.count(Metrics.SPACE_CACHE_MISS);
+			// vor dem Messen lesen: ein invalidate waehrenddessen macht den Wert gleich wieder ungueltig
+			int generation = getGeneration(mountPoint);
+			s = Size.getSpace(new File(mountPoint));
+			s.mGeneration = generation;
+			mEntries.put(mountPoint, s);
+		} else
+			Metrics.count(Metrics.SPACE_CACHE_HIT);
+		return s;
+	}
+	
+	
+	/**
+	 * Verwirft den Messwert eines Devices, z.B. nach dem Schreiben groesserer Dateien
+	 */
+	public static void invalidate(Device d) {
+		invalidate(d.getMountPoint());
+	}
+	
+	
+	public static void invalidate(String mountPoint) {
+		AtomicInteger c = mInvalidations.get(mountPoint);
+		if (c==null) {
+			AtomicInteger n = new AtomicInteger();
+			c = mInvalidations.putIfAbsent(mountPoint, n);
+			if (c==null) c = n;
+		}
+		c.incrementAndGet();
+		mEntries.remove(mountPoint);
+	}
+	
+	
+	/**
+	 * @return ein Zaehler, der bei jedem invalidate des MountPoints (und bei 
+	 * 		{@link #invalidateAll()}) steigt; ein {@link Size} aus einer 
+	 * 		aelteren Generation ist ueberholt
+	 * @since 1.6
+	 */
+	static int getGeneration(String mountPoint) {
+		AtomicInteger c = mInvalidations.get(mountPoint);
+		return mEpoch + (c==null ? 0 : c.get());
+	}
+	
+	
+	/**
+	 * Verwirft alle Messwerte; wird bei jedem Broadcast aufgerufen
+	 */
+	public static synchronized void invalidateAll() {
+		mEpoch++;
+		mEntries.clear();
+	}
+}
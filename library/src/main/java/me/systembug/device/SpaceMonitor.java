@@ -0,0 +1,236 @@
+package me.systembug.device;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+/**
+ * Ueberwacht den freien Speicher aller verfuegbaren Devices, damit eine App 
+ * nicht erst an einem ENOSPC mitten im Schreiben merkt, dass die Karte voll ist.
+ * <ul>
+ * <li>Die Messwerte jedes Devices landen in einem Ringpuffer fester Groesse 
+ * 	(nur long-Arrays, keine Objekte pro Messwert).
+ * <li>Faellt der freie Speicher unter eine der Schwellen aus 
+ * 	{@link #setThresholds(long...)} oder steigt wieder darueber, werden die 
+ * 	{@link Listener} benachrichtigt.
+ * <li>Aus den Messwerten wird per linearer Regression die Schreibrate und 
+ * 	daraus die Zeit bis zum Vollaufen geschaetzt ({@link #getTimeToFull(Device)}).
+ * <li>Das Messintervall passt sich an: je weniger frei ist und je schneller
+ * 	die Karte vollaeuft, desto oefter wird gemessen, zwischen minInterval 
+ * 	und maxInterval.
+ * </ul>
+ * Gemessen wird in einem eigenen Hintergrund-Thread per statfs in ein 
+ * wiederverwendetes {@link StorageStats}, also am {@link SpaceCache} vorbei: 
+ * dessen Werte werden dabei weder benutzt noch aufgefrischt.
+ * 
+ * @since 1.6
+ */
+public class SpaceMonitor {
+	
+	/**
+	 * Wird im Thread des Monitors aufgerufen.
+	 */
+	public interface Listener {
+		/**
+		 * @param d das Device
+		 * @param threshold die ueberschrittene Schwelle in Bytes
+		 * @param free der gemessene freie Speicher
+		 * @param low true, wenn free unter die Schwelle gefallen ist, false, wenn 
+		 * 		wieder darueber
+		 */
+		void onThresholdCrossed(Device d, long threshold, long free, boolean low);
+	}
+	
+	
+	/** Ringpuffer der Messwerte eines Devices */
+	private static final class History {
+		final long[] times, free;
+		int head, count;
+		long lastFree = -1;
+		
+		History(int size) {
+			times = new long[size];
+			free = new long[size];
+		}
+		
+		void add(long time, long value) {
+			times[head] = time;
+			free[head] = value;
+			head = (head+1) % times.length;
+			if (count<times.length) count++;
+		}
+		
+		/** @return die Aenderung des freien Speichers in Bytes pro Sekunde, negativ beim Vollaufen */
+		double slope() {
+			if (count<2) return 0;
+			int start = (head - count + times.length) % times.length;
+			long t0 = times[start];
+			double st = 0, sf = 0, stt = 0, stf = 0;
+			for (int i=0; i<count; i++) {
+				int k = (start+i) % times.length;
+				double t = (times[k]-t0) / 1000.0, f = free[k];
+				st += t; sf += f; stt += t*t; stf += t*f;
+			}
+			double d = count*stt - st*st;
+			return d==0 ? 0 : (count*stf - st*sf) / d;
+		}
+	}
+	
+	
+	private final long mMinInterval, mMaxInterval;
+	private final int mHistorySize;
+	private final StorageStats mStats = new StorageStats();
+	private final HashMap<String, History> mHistories = new HashMap<String, History>();
+	private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<Listener>();
+	private volatile long[] mThresholds = new long[0];
+	private HandlerThread mThread;
+	private Handler mHandler;
+	
+	private final Runnable mPoll = new Runnable() {
+		@Override public void run() {
+			long next = poll();
+			synchronized (SpaceMonitor.this) {
+				if (mHandler!=null) mHandler.postDelayed(this, next);
+			}
+		}
+	};
+	
+	
+	/**
+	 * @param minInterval das kuerzeste Messintervall in Millisekunden
+	 * @param maxInterval das laengste Messintervall (bei reichlich Platz)
+	 * @param historySize die Anzahl der Messwerte pro Device fuer die Schaetzung der Schreibrate
+	 */
+	public SpaceMonitor(long minInterval, long maxInterval, int historySize) {
+		if (minInterval<=0 || maxInterval<minInterval) throw new IllegalArgumentException("0 < minInterval <= maxInterval");
+		if (historySize<2) throw new IllegalArgumentException("historySize muss mindestens 2 sein");
+		mMinInterval = minInterval;
+		mMaxInterval = maxInterval;
+		mHistorySize = historySize;
+	}
+	
+	
+	/**
+	 * @param bytes die Schwellen fuer den freien Speicher, bei deren Unter- bzw.
+	 * 		Ueberschreiten die Listener aufgerufen werden
+	 */
+	public void setThresholds(long... bytes) {
+		long[] t = bytes.clone();
+		Arrays.sort(t);
+		mThresholds = t;
+	}
+	
+	
+	public void addListener(Listener l) { mListeners.addIfAbsent(l); }
+	public void removeListener(Listener l) { mListeners.remove(l); }
+	
+	
+	public synchronized void start() {
+		if (mThread!=null) return;
+		mThread = new HandlerThread("SpaceMonitor", Process.THREAD_PRIORITY_BACKGROUND);
+		mThread.start();
+		mHandler = new Handler(mThread.getLooper());
+		mHandler.post(mPoll);
+	}
+	
+	
+	public synchronized void stop() {
+		if (mThread==null) return;
+		mHandler.removeCallbacks(mPoll);
+		mThread.quit();
+		mHandler = null;
+		mThread = null;
+	}
+	
+	
+	/**
+	 * @return die geschaetzte Zeit in Millisekunden, bis das Device bei der 
+	 * 		aktuellen Schreibrate voll ist, oder -1, wenn es nicht vollaeuft
+	 * 		bzw. noch zu wenige Messwerte vorliegen
+	 */
+	public synchronized long getTimeToFull(Device d) {
+		History h = mHistories.get(d.getMountPoint());
+		return h==null ? -1 : timeToFull(h);
+	}
+	
+	
+	/**
+	 * @return die Schreibrate in Bytes pro Sekunde (positiv, wenn der freie
+	 * 		Speicher abnimmt)
+	 */
+	public synchronized double getWriteRate(Device d) {
+		History h = mHistories.get(d.getMountPoint());
+		return h==null ? 0 : -h.slope();
+	}
+	
+	
+	private static long timeToFull(History h) {
+		double slope = h.slope();
+		if (slope>=0 || h.lastFree<0) return -1;
+		return (long) (h.lastFree / -slope * 1000);
+	}
+	
+	
+	private static boolean contains(List<Device> devices, String mountPoint) {
+		for (Device d : devices) if (d.getMountPoint().equals(mountPoint)) return true;
+		return false;
+	}
+	
+	
+	/** misst alle Devices und liefert das naechste Intervall */
+	private long poll() {
+		List<Device> devices = Environment2.getDeviceList(null, true, true, true);
+		long now = SystemClock.elapsedRealtime();
+		long next = mMaxInterval;
+		long[] thresholds = mThresholds;
+		synchronized (this) {
+			// ausgeworfene Karten und abgezogene USB-Sticks vergessen
+			for (Iterator<String> it = mHistories.keySet().iterator(); it.hasNext(); ) {
+				if (!contains(devices, it.next())) it.remove();
+			}
+		}
+		for (Device d : devices) {
+			String mp = d.getMountPoint();
+			// eigenes, wiederverwendetes StorageStats statt je Messung ein Size samt zwei Long;
+			// ab Android 5 legt nur Os.statvfs selbst noch ein StructStatVfs an
+			StorageStats s = mStats;
+			s.sample(mp);
+			long free = s.getAvailable();
+			long previous;
+			long ttf;
+			synchronized (this) {
+				History h = mHistories.get(mp);
+				if (h==null) mHistories.put(mp, h = new History(mHistorySize));
+				h.add(now, free);
+				previous = h.lastFree;
+				h.lastFree = free;
+				ttf = timeToFull(h);
+			}
+			
+			for (long t : thresholds) {
+				if (previous>=0 && (previous>=t) != (free>=t)) {
+					for (Listener l : mListeners) l.onThresholdCrossed(d, t, free, free<t);
+				} else if (previous<0 && free<t) {
+					// schon beim ersten Messen darunter
+					for (Listener l : mListeners) l.onThresholdCrossed(d, t, free, true);
+				}
+			}
+			
+			// je weniger Platz, desto kuerzer das Intervall (quadratisch im Anteil freien Speichers)
+			long total = s.getTotal();
+			double fraction = total>0 ? (double) free/total : 1;
+			long interval = mMinInterval + (long) ((mMaxInterval-mMinInterval) * fraction * fraction);
+			// und mehrmals messen, bevor die Karte voraussichtlich voll ist
+			if (ttf>=0) interval = Math.min(interval, ttf/4);
+			next = Math.min(next, Math.max(mMinInterval, interval));
+		}
+		return next;
+	}
+}
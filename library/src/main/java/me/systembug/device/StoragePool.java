@@ -0,0 +1,310 @@
+package me.systembug.device;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+
+/**
+ * Verteilt Dateien (z.B. einen grossen Medien-Cache) per Consistent Hashing
+ * auf alle beschreibbaren Devices aus
+ * {@link Environment2#getDeviceList(String, boolean, boolean, boolean) getDeviceList(null, true, true, false)}.
+ * Jedes Device bekommt abhaengig von seinem Gewicht ({@link Weight}) eine Anzahl
+ * virtueller Knoten auf einem Ring aus 64-Bit-Hashwerten; ein Schluessel gehoert
+ * dem naechsten Knoten im Uhrzeigersinn. Kommt ein Device hinzu oder faellt
+ * eins weg, wandern nur die Schluessel, die auf dessen Knoten liegen; alles
+ * andere bleibt, wo es war.
+ * <p>
+ * Damit der Pool Aenderungen mitbekommt, muss er per
+ * {@link Environment2#addDeviceListener(DeviceDiff.Listener)} angemeldet werden
+ * (und die Updates muessen wie dort beschrieben ausgeloest werden). Nach einem
+ * Umbau findet {@link #findFile(String)} Dateien auch noch auf dem bisherigen
+ * Device, so dass die App sie nach und nach umziehen kann.
+ * <p>
+ * Fuer paralleles Lesen und Schreiben hat jedes Device einen eigenen Thread
+ * ({@link #submit(String, Callable)}): Zugriffe auf verschiedene Devices laufen
+ * gleichzeitig, Zugriffe auf dasselbe nacheinander, was gerade SD-Karten und
+ * USB-Sticks besser vertragen.
+ *
+ * @since 1.6
+ */
+public class StoragePool implements DeviceDiff.Listener {
+
+	/** Wonach sich die Zahl der virtuellen Knoten eines Devices richtet */
+	public enum Weight {
+		/** alle Devices gleich */
+		EQUAL,
+		/** nach der Groesse; bleibt stabil, solange dieselben Devices gesteckt sind */
+		CAPACITY,
+		/** nach dem freien Speicher beim Umbau; verschiebt bei jedem {@link #rebuild()} etwas */
+		FREE
+	}
+
+	/** virtuelle Knoten je Device bei {@link Weight#EQUAL} */
+	private static final int NODES_EQUAL = 128;
+	/** virtuelle Knoten je GiB bei {@link Weight#CAPACITY} und {@link Weight#FREE} */
+	private static final int NODES_PER_GB = 4;
+	private static final int NODES_MIN = 16;
+	private static final int NODES_MAX = 1024;
+
+	/** ein unveraenderlicher Stand des Rings */
+	private static final class Ring {
+		final long[] mHashes;
+		final int[] mOwners;
+		final Device[] mDevices;
+		final File[] mRoots;
+
+		Ring(long[] hashes, int[] owners, Device[] devices, File[] roots) {
+			mHashes = hashes;
+			mOwners = owners;
+			mDevices = devices;
+			mRoots = roots;
+		}
+
+		/** @return der Index in mDevices oder -1, falls der Ring leer ist */
+		int lookup(long hash) {
+			if (mHashes.length==0) return -1;
+			int i = Arrays.binarySearch(mHashes, hash);
+			if (i<0) i = -i-1;
+			if (i==mHashes.length) i = 0;
+			return mOwners[i];
+		}
+	}
+	private static final Ring EMPTY = new Ring(new long[0], new int[0], new Device[0], new File[0]);
+
+	private final Context mContext;
+	private final String mDir;
+	private final Weight mWeight;
+	private volatile Ring mRing = EMPTY;
+	private volatile Ring mPrevious = EMPTY;
+	private final HashMap<String, ExecutorService> mExecutors = new HashMap<String, ExecutorService>();
+
+	/**
+	 * @param ctx der Context der App
+	 * @param dir das Unterverzeichnis, das auf jedem Device per
+	 * 		{@link Device#getFilesDir(Context, String)} angelegt wird
+	 * @param weight die Gewichtung der Devices
+	 */
+	public StoragePool(Context ctx, String dir, Weight weight) {
+		if (ctx==null) throw new IllegalArgumentException("ctx darf nicht null sein");
+		if (weight==null) throw new IllegalArgumentException("weight darf nicht null sein");
+		mContext = ctx.getApplicationContext()!=null ? ctx.getApplicationContext() : ctx;
+		mDir = dir;
+		mWeight = weight;
+		rebuild();
+	}
+
+
+	/**
+	 * Baut den Ring neu auf, wenn Devices dazugekommen oder weggefallen sind
+	 * oder sich die Beschreibbarkeit geaendert hat.
+	 */
+	@Override
+	public void onDevicesChanged(DeviceDiff diff) {
+		if (!diff.getMounted().isEmpty() || !diff.getUnmounted().isEmpty() || !diff.getWriteableChanged().isEmpty())
+			rebuild();
+	}
+
+
+	/**
+	 * Baut den Ring aus den aktuell verfuegbaren, beschreibbaren Devices neu auf.
+	 * Der bisherige Ring bleibt fuer {@link #findFile(String)} erhalten.
+	 */
+	public synchronized void rebuild() {
+		List<Device> all = Environment2.getDeviceList(null, true, true, false);
+		ArrayList<Device> devices = new ArrayList<Device>(all.size());
+		ArrayList<File> roots = new ArrayList<File>(all.size());
+		for (Device d : all) {
+			if (!d.isWriteable()) continue;
+			File root = d.getFilesDir(mContext, mDir);
+			if (root==null || !root.isDirectory()) continue;
+			devices.add(d);
+			roots.add(root);
+		}
+
+		int[] nodes = new int[devices.size()];
+		int total = 0;
+		for (int i=0; i<nodes.length; i++) total += nodes[i] = getNodes(devices.get(i));
+		long[] hashes = new long[total];
+		int[] owners = new int[total];
+		int n = 0;
+		for (int i=0; i<nodes.length; i++) {
+			// die Knoten haengen nur am MountPoint, damit sie beim naechsten Umbau wieder dort liegen
+			String mp = devices.get(i).getMountPoint();
+			for (int k=0; k<nodes[i]; k++) {
+				hashes[n] = hash(mp+"#"+k);
+				owners[n++] = i;
+			}
+		}
+		sort(hashes, owners);
+
+		Ring ring = new Ring(hashes, owners,
+				devices.toArray(new Device[devices.size()]), roots.toArray(new File[roots.size()]));
+		mPrevious = mRing;
+		mRing = ring;
+		retireExecutors(ring);
+	}
+
+
+	private int getNodes(Device d) {
+		if (mWeight==Weight.EQUAL) return NODES_EQUAL;
+		Size size = d.getSize();
+		// ohne Groesse (statfs fehlgeschlagen) mit 0 Bytes, also NODES_MIN
+		StorageStats s = size==null ? null : size.getStats();
+		long bytes = s==null ? 0 : mWeight==Weight.CAPACITY ? s.getTotal() : s.getAvailable();
+		long n = bytes / (1024L*1024*1024) * NODES_PER_GB;
+		return (int)Math.max(NODES_MIN, Math.min(NODES_MAX, n));
+	}
+
+
+	/**
+	 * @return das Device, dem der Schluessel gehoert; null, wenn kein Device
+	 * 		beschreibbar ist
+	 */
+	public Device getDevice(String key) {
+		Ring r = mRing;
+		int i = r.lookup(hash(key));
+		return i<0 ? null : r.mDevices[i];
+	}
+
+
+	/**
+	 * @param key der Schluessel; wird unveraendert als Dateiname benutzt und
+	 * 		darf daher keine unzulaessigen Zeichen enthalten
+	 * @return die Datei auf dem zustaendigen Device, ob es sie gibt oder nicht;
+	 * 		null, wenn kein Device beschreibbar ist
+	 */
+	public File getFile(String key) {
+		Ring r = mRing;
+		int i = r.lookup(hash(key));
+		return i<0 ? null : new File(r.mRoots[i], key);
+	}
+
+
+	/**
+	 * Wie {@link #getFile(String)}, sucht aber nach einem Umbau des Rings auch
+	 * auf dem Device, dem der Schluessel vorher gehoerte, falls es noch verfuegbar ist.
+	 * @return die vorhandene Datei oder null
+	 */
+	public File findFile(String key) {
+		long h = hash(key);
+		Ring r = mRing;
+		int i = r.lookup(h);
+		if (i<0) return null;
+		File f = new File(r.mRoots[i], key);
+		if (f.exists()) return f;
+		Ring p = mPrevious;
+		int j = p.lookup(h);
+		if (j<0 || p.mDevices[j]==r.mDevices[i] || !p.mDevices[j].isAvailable()) return null;
+		File old = new File(p.mRoots[j], key);
+		return old.exists() ? old : null;
+	}
+
+
+	/**
+	 * @return die Devices des Pools in der Reihenfolge von getDeviceList
+	 */
+	public List<Device> getDevices() {
+		return Arrays.asList(mRing.mDevices.clone());
+	}
+
+
+	/**
+	 * Fuehrt task im Thread des Devices aus, dem der Schluessel gehoert.
+	 * Aufgaben fuer verschiedene Devices laufen parallel.
+	 * @throws IllegalStateException wenn kein Device beschreibbar ist
+	 */
+	public <T> Future<T> submit(String key, Callable<T> task) {
+		Device d = getDevice(key);
+		if (d==null) throw new IllegalStateException("kein beschreibbares Device");
+		return getExecutor(d).submit(task);
+	}
+
+
+	/**
+	 * Beendet die Threads des Pools; bereits uebergebene Aufgaben laufen noch zu Ende.
+	 * Vorher sollte der Pool per {@link Environment2#removeDeviceListener(DeviceDiff.Listener)}
+	 * abgemeldet werden.
+	 */
+	public synchronized void shutdown() {
+		for (ExecutorService e : mExecutors.values()) e.shutdown();
+		mExecutors.clear();
+	}
+
+
+	private synchronized ExecutorService getExecutor(Device d) {
+		final String mp = d.getMountPoint();
+		ExecutorService e = mExecutors.get(mp);
+		if (e==null) {
+			e = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "StoragePool-"+mp);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			mExecutors.put(mp, e);
+		}
+		return e;
+	}
+
+
+	/** beendet die Threads von Devices, die nicht mehr im Ring sind */
+	private void retireExecutors(Ring ring) {
+		HashMap<String, ExecutorService> keep = new HashMap<String, ExecutorService>();
+		for (Device d : ring.mDevices) {
+			ExecutorService e = mExecutors.remove(d.getMountPoint());
+			if (e!=null) keep.put(d.getMountPoint(), e);
+		}
+		for (ExecutorService e : mExecutors.values()) e.shutdown();
+		mExecutors.clear();
+		mExecutors.putAll(keep);
+	}
+
+
+	/** FNV-1a ueber die chars, danach durchgemischt (Finalizer von MurmurHash3) */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i=0; i<s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+
+	/** sortiert hashes aufsteigend und owners mit */
+	private static void sort(long[] hashes, int[] owners) {
+		Integer[] idx = new Integer[hashes.length];
+		for (int i=0; i<idx.length; i++) idx[i] = i;
+		final long[] h = hashes;
+		Arrays.sort(idx, new Comparator<Integer>() {
+			@Override public int compare(Integer a, Integer b) {
+				long x = h[a], y = h[b];
+				return x<y ? -1 : x==y ? 0 : 1;
+			}
+		});
+		long[] hs = new long[hashes.length];
+		int[] os = new int[owners.length];
+		for (int i=0; i<idx.length; i++) {
+			hs[i] = hashes[idx[i]];
+			os[i] = owners[idx[i]];
+		}
+		System.arraycopy(hs, 0, hashes, 0, hs.length);
+		System.arraycopy(os, 0, owners, 0, os.length);
+	}
+}
@@ -0,0 +1,153 @@
+package me.systembug.device;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.StatFs;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.StructStatVfs;
+
+/**
+ * Die Werte eines statfs-Aufrufs in primitiven Feldern: Gesamtgroesse, freier
+ * und fuer Apps nutzbarer Speicher, Blockgroesse und Inodes. Anders als
+ * {@link Size} ist ein StorageStats-Objekt wiederverwendbar; wer regelmaessig
+ * misst (z.B. fuer eine Historie), legt einmal eins an und ruft dann nur noch
+ * {@link #sample(String)} auf:
+ * <ul>
+ * <li>ab Android 5 per {@link Os#statvfs(String)}, ein Systemaufruf, der
+ * 		auch die Inodes liefert; die Plattform legt dabei je Aufruf ein 
+ * 		{@link StructStatVfs} an, das sich nicht vermeiden laesst;</li>
+ * <li>davor mit einem einmal angelegten und dann per {@link StatFs#restat(String)}
+ * 		wiederverwendeten {@link StatFs}, also ohne neue Objekte; die Inodes
+ * 		sind dort nicht zu bekommen und bleiben 0.</li>
+ * </ul>
+ * Gespart wird also vor allem gegenueber {@link Size#getSpace(java.io.File)}, 
+ * das je Messung ein StorageStats, ein Size und zwei Long anlegt.
+ * Die Objekte, die {@link Size#getStats()} liefert, sind eingefroren;
+ * {@link #sample(String)} und {@link #set(StorageStats)} werfen dort eine
+ * IllegalStateException.
+ *
+ * @since 1.6
+ */
+public final class StorageStats {
+	private long mTotal, mFree, mAvailable, mBlockSize, mFiles, mFreeFiles, mTime;
+	private StatFs mStatFs;
+	private boolean mFrozen;
+
+	public StorageStats() { }
+
+
+	/** @return Gesamtgroesse in Bytes */
+	public long getTotal() { return mTotal; }
+	/** @return freier Speicher in Bytes, einschliesslich der fuer root reservierten Bloecke */
+	public long getFree() { return mFree; }
+	/** @return fuer Apps nutzbarer Speicher in Bytes; das, was {@link Size} als first liefert */
+	public long getAvailable() { return mAvailable; }
+	/** @return Blockgroesse in Bytes */
+	public long getBlockSize() { return mBlockSize; }
+	/** @return Anzahl der Inodes; 0, falls nicht bekannt (vor Android 5) */
+	public long getFiles() { return mFiles; }
+	/** @return Anzahl der freien Inodes; 0, falls nicht bekannt (vor Android 5) */
+	public long getFreeFiles() { return mFreeFiles; }
+	/** @return Zeitpunkt der Messung als {@link SystemClock#elapsedRealtime()} */
+	public long getTime() { return mTime; }
+	/** @return das Alter der Messwerte in Millisekunden */
+	public long getAge() { return SystemClock.elapsedRealtime() - mTime; }
+
+
+	/**
+	 * Misst das Dateisystem, auf dem path liegt, mit einem statfs-Aufruf.
+	 * @param path ein Pfad auf dem Dateisystem
+	 * @return false, wenn die Messung fehlgeschlagen ist; dann sind alle Werte 0
+	 */
+	@SuppressLint("NewApi")
+	public boolean sample(String path) {
+		checkWritable();
+		long t = Metrics.start();
+		try {
+			if (path==null) throw new IllegalArgumentException("path darf nicht null sein");
+			if (Build.VERSION.SDK_INT >= 21) {
+				StructStatVfs st = Os.statvfs(path);
+				set(st.f_blocks*st.f_bsize, st.f_bfree*st.f_bsize, st.f_bavail*st.f_bsize,
+						st.f_bsize, st.f_files, st.f_ffree, SystemClock.elapsedRealtime());
+			} else {
+				if (mStatFs==null) mStatFs = new StatFs(path);
+				else mStatFs.restat(path);
+				StatFs fs = mStatFs;
+				// wichtig ist die long-Wandlung vor dem Multiplizieren
+				long bs = fs.getBlockSize();
+				set(fs.getBlockCount()*bs, fs.getFreeBlocks()*bs, fs.getAvailableBlocks()*bs,
+						bs, 0, 0, SystemClock.elapsedRealtime());
+			}
+			return true;
+		} catch (Exception e) {
+			set(0, 0, 0, 0, 0, 0, SystemClock.elapsedRealtime());
+			return false;
+		} finally {
+			Metrics.stop(Metrics.STATFS, t);
+		}
+	}
+
+
+	/**
+	 * Uebernimmt alle Werte aus o
+	 * @return this
+	 */
+	public StorageStats set(StorageStats o) {
+		checkWritable();
+		set(o.mTotal, o.mFree, o.mAvailable, o.mBlockSize, o.mFiles, o.mFreeFiles, o.mTime);
+		return this;
+	}
+
+
+	void set(long total, long free, long available, long blockSize, long files, long freeFiles, long time) {
+		mTotal = total;
+		mFree = free;
+		mAvailable = available;
+		mBlockSize = blockSize;
+		mFiles = files;
+		mFreeFiles = freeFiles;
+		mTime = time;
+	}
+
+
+	/** @return true, wenn beide Messungen (bis auf den Zeitpunkt) dieselben Werte ergeben haben */
+	public boolean sameValues(StorageStats o) {
+		return o!=null && mTotal==o.mTotal && mFree==o.mFree && mAvailable==o.mAvailable
+				&& mBlockSize==o.mBlockSize && mFiles==o.mFiles && mFreeFiles==o.mFreeFiles;
+	}
+
+
+	/**
+	 * @return die naechsthoehere Zweierpotenz ueber der Gesamtgroesse, siehe {@link Size#guessSize()}
+	 */
+	public long guessSize() {
+		if (mTotal==0) return 0;
+		long g;
+		if (mTotal>1024*1024*1024) g = 1024*1024*1024;
+		else if (mTotal>1024*1024) g = 1024*1024;
+		else g = 1;
+		while (mTotal>g) g *= 2;
+		return g;
+	}
+
+
+	/** @return this, ab jetzt unveraenderlich */
+	StorageStats freeze() {
+		mFrozen = true;
+		mStatFs = null;
+		return this;
+	}
+
+
+	private void checkWritable() {
+		if (mFrozen) throw new IllegalStateException("StorageStats aus Size sind unveraenderlich");
+	}
+
+
+	@Override
+	public String toString() {
+		return "StorageStats[total="+mTotal+", free="+mFree+", available="+mAvailable
+				+", blockSize="+mBlockSize+", files="+mFiles+", freeFiles="+mFreeFiles+"]";
+	}
+}
@@ -0,0 +1,345 @@
+package me.systembug.device;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.content.Context;
+
+/**
+ * Ermittelt, wie viel Platz die Daten der App auf einem {@link Device} belegen,
+ * aufgeschluesselt nach Unterverzeichnissen. Die Verzeichnisse werden parallel 
+ * von mehreren Threads durchlaufen; jedes fertige Verzeichnis wird sofort an 
+ * den {@link Listener} gemeldet, so dass man Zwischenergebnisse anzeigen kann.
+ * <p>
+ * Mit einer Zustandsdatei arbeitet der Analyzer inkrementell: Er speichert 
+ * fuer jedes Verzeichnis dessen mtime, die Summe der direkt darin liegenden 
+ * Dateien und die Namen der Unterverzeichnisse. Hat sich die mtime beim 
+ * naechsten Lauf nicht geaendert, wird das Verzeichnis nicht gelistet und 
+ * seine Dateien werden nicht einzeln abgefragt. Betreten werden die 
+ * Unterverzeichnisse trotzdem, weil eine Aenderung tief im Baum nur die 
+ * mtime des direkt betroffenen Verzeichnisses aendert. Nicht erkannt wird
+ * dabei, wenn eine vorhandene Datei waechst, ohne dass im Verzeichnis etwas 
+ * angelegt, geloescht oder umbenannt wird (und auf vfat, wenn die Aenderung
+ * innerhalb der 2-Sekunden-Aufloesung der mtime liegt); dafuer gibt es
+ * {@link #analyze(File, boolean, Listener)} mit full=true.
+ * <p>
+ * Die Klasse nutzt bis auf {@link #analyzeAppDirs(Device, Context, Listener)}
+ * nichts aus android.*.
+ * 
+ * @since 1.6
+ */
+public class UsageAnalyzer {
+	private static final int MAGIC = 0x45325541; // "E2UA"
+	private static final int VERSION = 1;
+	private static final String[] NO_DIRS = new String[0];
+
+	/**
+	 * Bekommt die Ergebnisse, sobald ein Verzeichnis samt Unterverzeichnissen 
+	 * fertig ist; wird aus den Worker-Threads aufgerufen.
+	 */
+	public interface Listener {
+		void onDirectory(File dir, long bytes, int files);
+	}
+	
+	
+	/** Belegung eines Verzeichnisses samt seiner direkten Unterverzeichnisse */
+	public static final class Usage {
+		private final File mDir;
+		private final long mBytes;
+		private final int mFiles;
+		private final List<Usage> mChildren;
+		
+		Usage(File dir, long bytes, int files, List<Usage> children) {
+			mDir = dir;
+			mBytes = bytes;
+			mFiles = files;
+			mChildren = children;
+		}
+		
+		public File getDir() { return mDir; }
+		/** @return die Summe der Dateigroessen im ganzen Teilbaum */
+		public long getBytes() { return mBytes; }
+		public int getFiles() { return mFiles; }
+		/** @return die direkten Unterverzeichnisse, groesste zuerst; deren getChildren() ist leer */
+		public List<Usage> getChildren() { return mChildren; }
+	}
+	
+	
+	/** gespeicherter Stand eines Verzeichnisses */
+	private static final class Record {
+		final long mtime, bytes;
+		final int files;
+		final String[] dirs;
+		Record(long mtime, long bytes, int files, String[] dirs) {
+			this.mtime = mtime;
+			this.bytes = bytes;
+			this.files = files;
+			this.dirs = dirs;
+		}
+	}
+	
+	
+	/** ein Verzeichnis waehrend eines Laufs */
+	private static final class Node {
+		final Node parent;
+		final File dir;
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicInteger files = new AtomicInteger();
+		// eins fuer das eigene Listing, eins je Unterverzeichnis
+		final AtomicInteger pending = new AtomicInteger(1);
+		Node(Node parent, File dir) {
+			this.parent = parent;
+			this.dir = dir;
+		}
+	}
+	
+	
+	private final File mStateFile;
+	private final int mThreads;
+	private HashMap<String, Record> mRecords;
+	
+	
+	/**
+	 * @param stateFile die Datei, in der die Verzeichnis-Staende gespeichert werden,
+	 * 		z.B. in {@link Context#getCacheDir()}; null fuer einen Analyzer ohne Gedaechtnis
+	 * @param threads die Anzahl paralleler Threads; 0 fuer die Anzahl der Prozessoren
+	 */
+	public UsageAnalyzer(File stateFile, int threads) {
+		mStateFile = stateFile;
+		mThreads = threads>0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
+	
+	/**
+	 * Analysiert files- und cache-Verzeichnis der App auf dem Device
+	 * @return die Ergebnisse fuer {@link Device#getFilesDir(Context)} und 
+	 * 		{@link Device#getCacheDir(Context)}, jeweils null, falls nicht vorhanden
+	 */
+	public Usage[] analyzeAppDirs(Device d, Context ctx, Listener l) throws InterruptedException {
+		File files = d.getFilesDir(ctx), cache = d.getCacheDir(ctx);
+		return new Usage[] {
+				files==null ? null : analyze(files, false, l),
+				cache==null ? null : analyze(cache, false, l)
+		};
+	}
+	
+	
+	public Usage analyze(File root, Listener l) throws InterruptedException {
+		return analyze(root, false, l);
+	}
+	
+	
+	/**
+	 * Durchlaeuft root und alle Unterverzeichnisse.
+	 * @param root das Startverzeichnis
+	 * @param full true, um alle Verzeichnisse neu zu listen, auch wenn sich
+	 * 		deren mtime nicht geaendert hat
+	 * @param l bekommt jedes fertige Verzeichnis gemeldet; kann null sein
+	 * @return die Belegung von root, aufgeschluesselt nach den direkten Unterverzeichnissen
+	 * @throws RuntimeException wenn der Listener eine wirft (auch andere Fehler 
+	 * 		der Worker kommen so beim Aufrufer an); der Zustand wird dann nicht gespeichert
+	 */
+	public synchronized Usage analyze(File root, boolean full, final Listener l) throws InterruptedException {
+		if (mRecords==null) mRecords = load();
+		final Map<String, Record> old = full ? Collections.<String, Record>emptyMap() : mRecords;
+		final ConcurrentHashMap<String, Record> fresh = new ConcurrentHashMap<String, Record>();
+		final ConcurrentHashMap<Node, Usage> children = new ConcurrentHashMap<Node, Usage>();
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final Node top = new Node(null, root);
+		
+		final ExecutorService pool = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+			@Override public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "UsageAnalyzer-"+mCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		
+		final class Walker implements Runnable {
+			private final Node mNode;
+			Walker(Node node) { mNode = node; }
+			
+			@Override public void run() {
+				try {
+					walk();
+				} catch (Throwable t) {
+					// Listener oder Pool gescheitert: analyze() aufwecken, dort wird t geworfen
+					failure.compareAndSet(null, t);
+					done.countDown();
+				}
+			}
+			
+			private void walk() {
+				File dir = mNode.dir;
+				String path = dir.getPath();
+				Record r;
+				try {
+					long mtime = dir.lastModified();
+					r = old.get(path);
+					if (r==null || r.mtime!=mtime || mtime==0) r = list(dir, mtime);
+					fresh.put(path, r);
+				} catch (SecurityException e) {
+					// nicht lesbar; trotzdem abschliessen, sonst wartet analyze() ewig
+					r = new Record(0, 0, 0, NO_DIRS);
+				}
+				mNode.bytes.addAndGet(r.bytes);
+				mNode.files.addAndGet(r.files);
+				mNode.pending.addAndGet(r.dirs.length);
+				for (String name : r.dirs) pool.execute(new Walker(new Node(mNode, new File(dir, name))));
+				finish(mNode);
+			}
+			
+			private void finish(Node n) {
+				while (n!=null && n.pending.decrementAndGet()==0) {
+					long bytes = n.bytes.get();
+					int files = n.files.get();
+					if (l!=null) l.onDirectory(n.dir, bytes, files);
+					Node p = n.parent;
+					if (p==null) {
+						done.countDown();
+					} else {
+						p.bytes.addAndGet(bytes);
+						p.files.addAndGet(files);
+						if (p==top) children.put(n, new Usage(n.dir, bytes, files, Collections.<Usage>emptyList()));
+					}
+					n = p;
+				}
+			}
+		}
+		
+		try {
+			pool.execute(new Walker(top));
+			done.await();
+		} finally {
+			pool.shutdownNow();
+		}
+		Throwable t = failure.get();
+		if (t instanceof RuntimeException) throw (RuntimeException) t;
+		if (t instanceof Error) throw (Error) t;
+		if (t!=null) throw new RuntimeException(t);
+		
+		// Stand von root ersetzen, andere Wurzeln behalten
+		String prefix = root.getPath();
+		for (Iterator<String> i = mRecords.keySet().iterator(); i.hasNext(); ) {
+			String p = i.next();
+			if (p.equals(prefix) || p.startsWith(prefix+"/")) i.remove();
+		}
+		mRecords.putAll(fresh);
+		save(mRecords);
+		
+		ArrayList<Usage> list = new ArrayList<Usage>(children.values());
+		Collections.sort(list, new Comparator<Usage>() {
+			@Override public int compare(Usage a, Usage b) { 
+				return a.mBytes<b.mBytes ? 1 : a.mBytes>b.mBytes ? -1 : 0; 
+			}
+		});
+		return new Usage(root, top.bytes.get(), top.files.get(), Collections.unmodifiableList(list));
+	}
+	
+	
+	/** 
+	 * listet ein Verzeichnis und summiert die direkt enthaltenen Dateien;
+	 * Symlinks auf Verzeichnisse werden uebersprungen, sonst liefe eine 
+	 * Schleife im Baum endlos
+	 */
+	private static Record list(File dir, long mtime) {
+		File[] entries = dir.listFiles();
+		if (entries==null) return new Record(mtime, 0, 0, NO_DIRS);
+		long bytes = 0;
+		int files = 0;
+		ArrayList<String> dirs = new ArrayList<String>();
+		String canonical = null;
+		for (File f : entries) {
+			if (f.isDirectory()) {
+				try {
+					if (canonical==null) canonical = dir.getCanonicalPath();
+					if (f.getCanonicalPath().equals(new File(canonical, f.getName()).getPath())) dirs.add(f.getName());
+				} catch (IOException e) {
+					// nicht aufloesbar: lieber auslassen als eine Schleife riskieren
+				}
+			} else {
+				bytes += f.length();
+				files++;
+			}
+		}
+		return new Record(mtime, bytes, files, dirs.isEmpty() ? NO_DIRS : dirs.toArray(new String[dirs.size()]));
+	}
+	
+	
+	private HashMap<String, Record> load() {
+		HashMap<String, Record> map = new HashMap<String, Record>();
+		if (mStateFile==null || !mStateFile.isFile()) return map;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mStateFile), 16384));
+			try {
+				if (in.readInt()!=MAGIC || in.readInt()!=VERSION) return map;
+				int n = in.readInt();
+				for (int i=0; i<n; i++) {
+					String path = in.readUTF();
+					long mtime = in.readLong(), bytes = in.readLong();
+					int files = in.readInt();
+					String[] dirs = new String[in.readInt()];
+					for (int j=0; j<dirs.length; j++) dirs[j] = in.readUTF();
+					map.put(path, new Record(mtime, bytes, files, dirs.length==0 ? NO_DIRS : dirs));
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			// kaputte Zustandsdatei: dann eben alles neu
+			map.clear();
+		}
+		return map;
+	}
+	
+	
+	private void save(Map<String, Record> records) {
+		if (mStateFile==null) return;
+		File tmp = new File(mStateFile.getPath()+".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 16384));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(records.size());
+				for (Map.Entry<String, Record> e : records.entrySet()) {
+					Record r = e.getValue();
+					out.writeUTF(e.getKey());
+					out.writeLong(r.mtime);
+					out.writeLong(r.bytes);
+					out.writeInt(r.files);
+					out.writeInt(r.dirs.length);
+					for (String d : r.dirs) out.writeUTF(d);
+				}
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(mStateFile)) tmp.delete();
+		} catch (IOException e) {
+			tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package me.systembug.device;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+import android.os.Build;
+import android.os.Environment;
+import android.text.TextUtils;
+import android.text.TextUtils.SimpleStringSplitter;
+import android.util.Log;
+
+/**
+ * Die vold-Konfigurationsdatei auswerten, die ueblicherweise 
+ * in /system/etc/ liegt (vold.fstab, bei manchen Geraeten vold.conf). 
+ * Gibt es ab Android 4.3 nicht mehr, dort hilft {@link MountInfoScanner}.
+ * 
+ * @see Environment2#getDefaultScanners()
+ * @since 1.6 (vorher Environment2.scanVold)
+ */
+class VoldScanner implements DeviceScanner {
+	private static final String TAG = "Environment2";
+	private final String mName;
+	
+	/**
+	 * @param name ein String mit dem Dateinamen (vold.fstab oder vold.conf)
+	 */
+	VoldScanner(String name) {
+		mName = name;
+	}
+
+	
+	/**
+	 * @return true, wenn geklappt hat; false, wenn Datei nicht (vollstaendig) 
+	 * 		gelesen werden konnte. Falls false, werden die bisher gelesenen
+	 * 		Devices nicht wieder geloescht, sondern bleiben in der Liste 
+	 * 		enthalten. Bisher ist mir aber noch kein Geraet untergekommen,
+	 * 		bei dem dieser Trick nicht funktioniert hat.
+	 */
+	@Override
+	public boolean scan(Sink sink) {
+		String s, f;
+		int count = 0;
+		boolean prefixScan = true; // sdcard-Prefixes
+		SimpleStringSplitter sp = new SimpleStringSplitter(' ');
+    	try {
+    		BufferedReader buf = new BufferedReader(new FileReader(Environment.getRootDirectory().getAbsolutePath()+"/etc/"+mName), 2048);
+    		s = buf.readLine();
+    		while (s!=null) {
+    			sp.setString(s.trim());
+    			f = sp.next(); // dev_mount oder anderes
+        		if ("dev_mount".equals(f)) {
+        			String label = sp.next().trim();
+        			String mountPoint = sp.next().trim();
+        			
+        			if (TextUtils.equals(sink.getPrimaryMountPoint(), mountPoint)) {
+        				// ein wenig Spezialkrams ueber /mnt/sdcard herausfinden
+        				
+        				// wenn die Gingerbread-Funktion isExternalStorageRemovable nicht da ist, diesen Hinweis nutzen
+        				if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) 
+        					sink.setPrimaryRemovable(true); 
+        					// dann ist auch der Standard-Eintrag removable
+        					// eigentlich reicht das hier nicht, denn die vold-Eintraege fuer die primaere SD-Karte sind viel komplexer, 
+        					// oft steht da was von non-removable. Doch diese ganzen proprietaeren Klamotten auszuwerden,
+        					// waere viel zu komplex. Ein gangbarer Kompromiss scheint zu sein, sich ab 2.3 einfach auf
+        					// isExternalStorageRemovable zu verlassen, was schon oben in Device() gesetzt wird. Bei den
+        					// bisher aufgetauchten Geraeten mit 2.2 wiederum scheint der Hinweis in vold zu klappen.
+        				
+        				// z.B. Galaxy Note haengt "encryptable_nonremovable" an
+        				while (sp.hasNext()) {
+        					f = sp.next();
+        					if (f.contains("nonremovable")) {
+        						sink.setPrimaryRemovable(false);
+        						Log.w(TAG, "isExternStorageRemovable overwrite ('nonremovable') auf false");
+        					}
+        				}
+        				prefixScan = false;
+        			} else {
+        				// nur in Liste aufnehmen, falls nicht Dupe von /mnt/sdcard
+        				sink.addDevice(label, mountPoint);
+        				count++;
+        			}
+        			
+        		} else if (prefixScan) {
+					// Further investigations only if before sdcard entry
+					// something unclean, since it must actually occur in {}, which I am not checking here
+        			if ("discard".equals(f)) {
+        				// manche (Galaxy Note) schreiben "discard=disable" vor den sdcard-Eintrag.
+        				sp.next(); // "="
+        				f = sp.next();
+        				if ("disable".equals(f)) {
+        					sink.setPrimaryRemovable(false);
+        					Log.w(TAG, "isExternStorageRemovable overwrite ('discard=disable') auf false");
+        				} else if ("enable".equals(f)) {
+							// ha, denkste ... so far I have found the entry only with two mobile phones, (Galaxy Note, Galaxy Mini 2), and
+							// he did not vote *, but the cards were not removable.
+							// mPrimary.mRemovable = true;
+        					Log.w(TAG, "isExternStorageRemovable overwrite overwrite ('discard=enable'), bleibt auf "+sink.isPrimaryRemovable());
+        				} else
+        					Log.w(TAG, "disable-Eintrag unverstaendlich: "+f);
+        			}
+        			
+        		}
+    			s = buf.readLine();
+    		}
+    		buf.close();
+    		if (Log.isLoggable(TAG, Log.VERBOSE)) Log.v(TAG, mName+" gelesen; Geraete gefunden: "+count);
+    		return true;
+    	} catch (Exception e) {
+    		Log.e(TAG, "kann "+mName+" nicht lesen: "+e.getMessage());
+    		return false;
+    	}
+	}
+}
@@ -8,6 +8,7 @@ import android.text.format.Formatter;
 import android.util.AttributeSet;
 import android.util.Log;
 import me.systembug.device.Device;
+import me.systembug.device.DeviceBenchmark;
 import me.systembug.device.Environment2;
 
 /**
@@ -23,6 +24,8 @@ import me.systembug.device.Environment2;
  * 	Ger?te. 0 macht nur Sinn, wenn man USB-Ger?te zur Auswahl bereitstellen m?chte.
  * <li>devices_data: bei 1 wird der interne Speicher (/data) mit angeboten. Vorsicht, dann klappt
  * 	{@link Device#getPublicDirectory(String)} nicht.
+ * <li>devices_sort_speed: bei 1 werden die Devices nach der per {@link DeviceBenchmark}
+ * 	gemessenen Geschwindigkeit sortiert (schnellste zuerst, nicht gemessene am Ende)
  * </ul>
  * Als Default-Wert f?r android:defaultValue sind g?ltig: 0=interner Speicher (/data), 1=prim?re
  * SD (meist /mnt/sdcard), 2=sekund?re SD-Karte falls vorhanden, sonst prim?re
@@ -63,8 +66,10 @@ public class DevicesListPreference extends ListPreference {
 		boolean available = attrs.getAttributeBooleanValue(null, "devices_available", true);
 		boolean intern = attrs.getAttributeBooleanValue(null, "devices_intern", true);
 		boolean data = attrs.getAttributeBooleanValue(null, "devices_data", false);
+		boolean sortSpeed = attrs.getAttributeBooleanValue(null, "devices_sort_speed", false);
 		
 		Device[] devices = Environment2.getDevices(key, available, intern, data);
+		if (sortSpeed) DeviceBenchmark.sortBySpeed(devices);
 		CharSequence[] entries = new CharSequence[devices.length];
 		CharSequence[] entryValues = new CharSequence[devices.length];
 		for (int i=0; i<devices.length; i++) {
@@ -85,11 +90,10 @@ public class DevicesListPreference extends ListPreference {
 			else
 				return Environment2.getInternalStorage();
 		} else {
-			// Wert in Devices-Tabelle suchen
-			Device[] d = Environment2.getDevices(null, false, true, true);
-			for (Device i : d) { if (n.startsWith(i.getMountPoint())) return i; }
-			Log.i(TAG, "didn't find mount point "+n);
-			return null;
+			// Wert in Devices-Tabelle suchen; das Device mit dem laengsten passenden MountPoint
+			Device d = Environment2.deviceForPath(n);
+			if (d==null) Log.i(TAG, "didn't find mount point "+n);
+			return d;
 		}
 	}
 	